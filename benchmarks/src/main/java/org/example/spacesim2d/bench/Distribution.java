@@ -0,0 +1,75 @@
+package org.example.spacesim2d.bench;
+
+import org.example.spacesim2d.Simulation;
+import org.example.spacesim2d.SpaceObject;
+
+import java.util.Random;
+
+public enum Distribution {
+    // how the benchmark objects are spread over the simulation area
+    UNIFORM,
+    CLUSTERED,
+    DISK;
+
+    private static final int CLUSTERS = 8;
+
+    public static int sideFor(int count) {
+        // grow the area with the object count so the density of the scene stays comparable
+        return Math.max(800, (int) (Math.sqrt(count) * 40));
+    }
+
+    public Simulation create(int count, long seed) {
+        int side = sideFor(count);
+        Simulation simulation = new Simulation(side * 7 / 4, side);
+        Random random = new Random(seed);
+        int width = simulation.getWidth();
+        int height = simulation.getHeight();
+        switch (this) {
+            case UNIFORM -> {
+                for (int i = 0; i < count; i++) {
+                    simulation.add(new SpaceObject(1 + 3 * random.nextDouble(), 5,
+                            10 + random.nextDouble() * (width - 20), 10 + random.nextDouble() * (height - 20),
+                            random.nextGaussian() * 0.5, random.nextGaussian() * 0.5));
+                }
+            }
+            case CLUSTERED -> {
+                double[] cx = new double[CLUSTERS];
+                double[] cy = new double[CLUSTERS];
+                for (int c = 0; c < CLUSTERS; c++) {
+                    cx[c] = width * (0.15 + 0.7 * random.nextDouble());
+                    cy[c] = height * (0.15 + 0.7 * random.nextDouble());
+                }
+                double spread = side / 20.0;
+                for (int i = 0; i < count; i++) {
+                    int c = i % CLUSTERS;
+                    double x = clamp(cx[c] + random.nextGaussian() * spread, 10, width - 10);
+                    double y = clamp(cy[c] + random.nextGaussian() * spread, 10, height - 10);
+                    simulation.add(new SpaceObject(1 + 3 * random.nextDouble(), 5, x, y,
+                            random.nextGaussian() * 0.5, random.nextGaussian() * 0.5));
+                }
+            }
+            case DISK -> {
+                double x0 = width / 2.0;
+                double y0 = height / 2.0;
+                SpaceObject star = new SpaceObject("star", 20, 50, x0, y0, 0, 0);
+                simulation.add(star);
+                double inner = 60;
+                double outer = 0.45 * height;
+                for (int i = 1; i < count; i++) {
+                    double r = inner + (outer - inner) * Math.sqrt(random.nextDouble());
+                    double angle = random.nextDouble() * 2 * Math.PI;
+                    // circular orbit around the star
+                    double v = Math.sqrt(simulation.getG() * star.getMass() / r);
+                    simulation.add(new SpaceObject(1 + 2 * random.nextDouble(), 1,
+                            x0 + r * Math.cos(angle), y0 + r * Math.sin(angle),
+                            -v * Math.sin(angle), v * Math.cos(angle)));
+                }
+            }
+        }
+        return simulation;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.min(Math.max(value, min), max);
+    }
+}
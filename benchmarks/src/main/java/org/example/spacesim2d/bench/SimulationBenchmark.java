@@ -0,0 +1,121 @@
+package org.example.spacesim2d.bench;
+
+import org.example.spacesim2d.BarnesHutGravity;
+import org.example.spacesim2d.BodyStore;
+import org.example.spacesim2d.DirectSumGravity;
+import org.example.spacesim2d.Simulation;
+import org.example.spacesim2d.SpaceObject;
+import org.example.spacesim2d.VectorDirectSumGravity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// throughput of the physics step and its phases, one op of update() is one simulation step
+// run with: java -jar target/benchmarks.jar -prof gc -rf json -rff results.json
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// the Vector API module is added so the simd solver runs its SIMD loops instead of the scalar fallback
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class SimulationBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int bodyCount;
+
+    @Param({"UNIFORM", "CLUSTERED", "DISK"})
+    public Distribution distribution;
+
+    @Param({"direct", "barnes-hut", "simd"})
+    public String solver;
+
+    private Simulation simulation;
+    private SpaceObject first;
+    private SpaceObject second;
+    private final double[] queryX = new double[QUERIES];
+    private final double[] queryY = new double[QUERIES];
+    private int query;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // a fresh scene every iteration so the measured state does not drift too far from the start
+        simulation = distribution.create(bodyCount, 42);
+        simulation.setGravitySolver(switch (solver) {
+            case "barnes-hut" -> new BarnesHutGravity();
+            case "simd" -> new VectorDirectSumGravity();
+            default -> new DirectSumGravity();
+        });
+        BodyStore bodies = simulation.getBodies();
+        first = bodies.get(0);
+        second = bodies.get(bodies.size() - 1);
+
+        // half the queries hit an object, half land on random points
+        Random random = new Random(7);
+        for (int i = 0; i < QUERIES; i++) {
+            if (i % 2 == 0) {
+                SpaceObject object = bodies.get(random.nextInt(bodies.size()));
+                queryX[i] = object.getX();
+                queryY[i] = object.getY();
+            } else {
+                queryX[i] = random.nextDouble() * simulation.getWidth();
+                queryY[i] = random.nextDouble() * simulation.getHeight();
+            }
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        simulation.update(1);
+        return simulation.getStep();
+    }
+
+    @Benchmark
+    public int applyForces() {
+        simulation.applyForces();
+        return simulation.getStep();
+    }
+
+    @Benchmark
+    public int checkCollisions() {
+        simulation.checkCollisions();
+        return simulation.getStep();
+    }
+
+    @Benchmark
+    public int checkCollisionsWithWalls() {
+        simulation.checkCollisionsWithWalls();
+        return simulation.getStep();
+    }
+
+    @Benchmark
+    public double collide() {
+        simulation.collide(first, second);
+        return first.getVx();
+    }
+
+    @Benchmark
+    public SpaceObject getObjectAt() {
+        int i = query++ & (QUERIES - 1);
+        return simulation.getObjectAt(queryX[i], queryY[i]);
+    }
+
+    @Benchmark
+    public SpaceObject getObjectClosestTo() {
+        int i = query++ & (QUERIES - 1);
+        return simulation.getObjectClosestTo(queryX[i], queryY[i]);
+    }
+}
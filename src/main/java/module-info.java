@@ -1,6 +1,10 @@
 module org.example.spacesim2d {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management;
+    requires jdk.management;
+    // optional, the SIMD solver falls back to scalar loops without it and the window does not need it
+    requires static jdk.incubator.vector;
 
 
     opens org.example.spacesim2d to javafx.fxml;
@@ -0,0 +1,369 @@
+package org.example.spacesim2d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+public class BarnesHutGravity implements GravitySolver {
+    // approximates gravity in O(n log n) by replacing far away groups of objects with their centre of mass
+    // a node of size s at distance d is treated as a single mass when s / d < theta
+    // with a pool the tree is built on the calling thread and the per object walks run in parallel,
+    // each walk only writes its own object's force so the result does not depend on the thread count
+    // theta = 0 opens every node and gives the same result as the direct sum (up to rounding)
+    // theta = 0.5 keeps the mean force error around 1% of the direct sum, theta = 1.0 around 10%
+    // objects whose pulls nearly cancel out can have a larger relative error on their small net force
+    // in a periodic box every object and node is seen at its nearest image, the tree itself does not wrap;
+    // nodes spanning a large part of the box fail the opening test and are always opened, so this stays
+    // a nearest image sum like the direct solvers (no Ewald sum over the further images)
+    // block timesteps ask for a few objects' forces many times per step while everyone drifts a little,
+    // so for small active sets the tree of the last build is refitted instead of rebuilt: the same leaves
+    // keep the same objects and the masses, centres of mass and bounding boxes are summed again bottom up;
+    // the opening test also opens nodes whose bounding box holds the object or is larger than the cell,
+    // so an object that drifted out of its cell never sees itself in an approximated node
+    private static final int MAX_DEPTH = 48;
+    // refit when fewer than one object in this many needs a force, rebuild otherwise
+    private static final int REFIT_FRACTION = 4;
+
+    private double theta;
+    private final ForkJoinPool pool;
+    private final ParallelRange.Body walks = this::computeForces;
+    private final ParallelRange.Body activeWalks = this::computeActiveForces;
+    private double G;
+    private int[] active;
+
+    // object state of the current step, read straight from the body store
+    private double[] bx;
+    private double[] by;
+    private double[] bm;
+    private double[] bfx;
+    private double[] bfy;
+    private double periodX;
+    private double periodY;
+    private int[] nextInLeaf = new int[0];
+
+    // quadtree nodes stored in flat arrays, reused between steps
+    private int nodeCount;
+    private int[] children = new int[0];
+    private int[] firstBody = new int[0];
+    private int[] depth = new int[0];
+    private boolean[] internal = new boolean[0];
+    private double[] centerX = new double[0];
+    private double[] centerY = new double[0];
+    private double[] halfSize = new double[0];
+    private double[] nodeMass = new double[0];
+    private double[] comX = new double[0];
+    private double[] comY = new double[0];
+    // bounding box of the objects under each node, the cell itself right after a build
+    private double[] boxMinX = new double[0];
+    private double[] boxMinY = new double[0];
+    private double[] boxMaxX = new double[0];
+    private double[] boxMaxY = new double[0];
+    private int[][] stacks = new int[0][];
+    // store, size and version the tree was built for, a refit needs all three unchanged
+    private BodyStore builtStore;
+    private int builtSize;
+    private int builtVersion;
+
+    public BarnesHutGravity(double theta, ForkJoinPool pool) {
+        setTheta(theta);
+        this.pool = pool;
+    }
+
+    public BarnesHutGravity(double theta) {
+        this(theta, null);
+    }
+
+    public BarnesHutGravity() {
+        this(0.5);
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    public void setTheta(double theta) {
+        if (theta < 0 || Double.isNaN(theta)) {
+            throw new IllegalArgumentException("theta must be non-negative: " + theta);
+        }
+        this.theta = theta;
+    }
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G) {
+        if (bodies.size < 2) {
+            return;
+        }
+        int chunks = prepare(bodies, G);
+        ParallelRange.run(pool, bodies.size, chunks, walks);
+    }
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G, int[] active, int activeCount) {
+        if (bodies.size < 2) {
+            return;
+        }
+        boolean refit = activeCount * REFIT_FRACTION < bodies.size && bodies == builtStore
+                && bodies.size == builtSize && bodies.version == builtVersion;
+        int chunks = refit ? prepareRefit(bodies, G) : prepare(bodies, G);
+        this.active = active;
+        ParallelRange.run(pool, activeCount, chunks, activeWalks);
+        this.active = null;
+    }
+
+    private int prepare(BodyStore bodies, double G) {
+        // builds the tree for the current positions and returns the number of chunks to walk it in
+        int n = bodies.size;
+        if (nextInLeaf.length < n) {
+            nextInLeaf = new int[Math.max(n, nextInLeaf.length * 2)];
+        }
+        bx = bodies.x;
+        by = bodies.y;
+        bm = bodies.mass;
+        bfx = bodies.fx;
+        bfy = bodies.fy;
+        periodX = bodies.periodX;
+        periodY = bodies.periodY;
+        buildTree(n);
+        builtStore = bodies;
+        builtSize = n;
+        builtVersion = bodies.version;
+        return prepareWalks(G);
+    }
+
+    private int prepareRefit(BodyStore bodies, double G) {
+        // the store's arrays may have been replaced when it grew, but the slots are the same
+        bx = bodies.x;
+        by = bodies.y;
+        bm = bodies.mass;
+        bfx = bodies.fx;
+        bfy = bodies.fy;
+        summarize();
+        return prepareWalks(G);
+    }
+
+    private int prepareWalks(double G) {
+        this.G = G;
+        int chunks = pool != null ? ParallelRange.chunksFor(pool) : 1;
+        if (stacks.length < chunks) {
+            stacks = new int[chunks][3 * MAX_DEPTH + 4];
+        }
+        return chunks;
+    }
+
+    private void computeForces(int chunk, int from, int to) {
+        int[] stack = stacks[chunk];
+        for (int i = from; i < to; i++) {
+            computeForce(i, G, stack);
+        }
+    }
+
+    private void computeActiveForces(int chunk, int from, int to) {
+        int[] stack = stacks[chunk];
+        for (int k = from; k < to; k++) {
+            computeForce(active[k], G, stack);
+        }
+    }
+
+    private void buildTree(int n) {
+        // bounding square of all objects
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, bx[i]);
+            minY = Math.min(minY, by[i]);
+            maxX = Math.max(maxX, bx[i]);
+            maxY = Math.max(maxY, by[i]);
+        }
+        double half = Math.max(maxX - minX, maxY - minY) / 2;
+        // pad a little so objects on the max edge still fall inside the root
+        half = half > 0 ? half * 1.0001 : 1;
+
+        nodeCount = 0;
+        int root = newNode((minX + maxX) / 2, (minY + maxY) / 2, half, 0);
+        for (int i = 0; i < n; i++) {
+            insert(root, i);
+        }
+        summarize();
+    }
+
+    private void summarize() {
+        // children are always created after their parent, so a reverse sweep sums the tree bottom up
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            double m = 0;
+            double mx = 0;
+            double my = 0;
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            if (internal[node]) {
+                for (int q = 0; q < 4; q++) {
+                    int child = children[4 * node + q];
+                    if (child != -1) {
+                        m += nodeMass[child];
+                        mx += comX[child] * nodeMass[child];
+                        my += comY[child] * nodeMass[child];
+                        minX = Math.min(minX, boxMinX[child]);
+                        minY = Math.min(minY, boxMinY[child]);
+                        maxX = Math.max(maxX, boxMaxX[child]);
+                        maxY = Math.max(maxY, boxMaxY[child]);
+                    }
+                }
+            } else {
+                for (int b = firstBody[node]; b != -1; b = nextInLeaf[b]) {
+                    m += bm[b];
+                    mx += bx[b] * bm[b];
+                    my += by[b] * bm[b];
+                    minX = Math.min(minX, bx[b]);
+                    minY = Math.min(minY, by[b]);
+                    maxX = Math.max(maxX, bx[b]);
+                    maxY = Math.max(maxY, by[b]);
+                }
+            }
+            nodeMass[node] = m;
+            comX[node] = m > 0 ? mx / m : centerX[node];
+            comY[node] = m > 0 ? my / m : centerY[node];
+            boxMinX[node] = minX;
+            boxMinY[node] = minY;
+            boxMaxX[node] = maxX;
+            boxMaxY[node] = maxY;
+        }
+    }
+
+    private void insert(int node, int body) {
+        while (true) {
+            if (internal[node]) {
+                int q = quadrant(node, body);
+                int child = children[4 * node + q];
+                if (child == -1) {
+                    child = newChild(node, q);
+                    firstBody[child] = body;
+                    nextInLeaf[body] = -1;
+                    return;
+                }
+                node = child;
+            } else if (firstBody[node] == -1) {
+                firstBody[node] = body;
+                nextInLeaf[body] = -1;
+                return;
+            } else if (depth[node] >= MAX_DEPTH) {
+                // objects on (almost) the same spot share a leaf instead of splitting forever
+                nextInLeaf[body] = firstBody[node];
+                firstBody[node] = body;
+                return;
+            } else {
+                // split the leaf and push its object one level down
+                int existing = firstBody[node];
+                firstBody[node] = -1;
+                internal[node] = true;
+                int child = newChild(node, quadrant(node, existing));
+                firstBody[child] = existing;
+                nextInLeaf[existing] = -1;
+            }
+        }
+    }
+
+    private void computeForce(int i, double G, int[] stack) {
+        double x = bx[i];
+        double y = by[i];
+        double m = bm[i];
+        double theta2 = theta * theta;
+        boolean periodic = periodX != 0;
+        double fx = 0;
+        double fy = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!internal[node]) {
+                for (int b = firstBody[node]; b != -1; b = nextInLeaf[b]) {
+                    if (b != i) {
+                        double dx = bx[b] - x;
+                        double dy = by[b] - y;
+                        if (periodic) {
+                            dx -= periodX * Math.rint(dx / periodX);
+                            dy -= periodY * Math.rint(dy / periodY);
+                        }
+                        double distance = Math.sqrt(dx * dx + dy * dy);
+                        double force = (G * m * bm[b]) / (distance * distance);
+                        fx += force * dx / distance;
+                        fy += force * dy / distance;
+                    }
+                }
+                continue;
+            }
+            double dx = comX[node] - x;
+            double dy = comY[node] - y;
+            if (periodic) {
+                dx -= periodX * Math.rint(dx / periodX);
+                dy -= periodY * Math.rint(dy / periodY);
+            }
+            double d2 = dx * dx + dy * dy;
+            // after a build the box lies inside the cell and both tests are the plain cell tests
+            double size = Math.max(2 * halfSize[node], Math.max(boxMaxX[node] - boxMinX[node], boxMaxY[node] - boxMinY[node]));
+            boolean contains = Math.abs(x - centerX[node]) <= halfSize[node] && Math.abs(y - centerY[node]) <= halfSize[node]
+                    || x >= boxMinX[node] && x <= boxMaxX[node] && y >= boxMinY[node] && y <= boxMaxY[node];
+            if (!contains && size * size < theta2 * d2) {
+                double distance = Math.sqrt(d2);
+                double force = (G * m * nodeMass[node]) / d2;
+                fx += force * dx / distance;
+                fy += force * dy / distance;
+            } else {
+                for (int q = 0; q < 4; q++) {
+                    int child = children[4 * node + q];
+                    if (child != -1) {
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+        bfx[i] += fx;
+        bfy[i] += fy;
+    }
+
+    private int quadrant(int node, int body) {
+        return (bx[body] >= centerX[node] ? 1 : 0) + (by[body] >= centerY[node] ? 2 : 0);
+    }
+
+    private int newChild(int parent, int q) {
+        double h = halfSize[parent] / 2;
+        double cx = centerX[parent] + ((q & 1) != 0 ? h : -h);
+        double cy = centerY[parent] + ((q & 2) != 0 ? h : -h);
+        int child = newNode(cx, cy, h, depth[parent] + 1);
+        children[4 * parent + q] = child;
+        return child;
+    }
+
+    private int newNode(double cx, double cy, double half, int nodeDepth) {
+        if (nodeCount == centerX.length) {
+            growNodes(Math.max(16, nodeCount * 2));
+        }
+        int node = nodeCount++;
+        Arrays.fill(children, 4 * node, 4 * node + 4, -1);
+        firstBody[node] = -1;
+        depth[node] = nodeDepth;
+        internal[node] = false;
+        centerX[node] = cx;
+        centerY[node] = cy;
+        halfSize[node] = half;
+        return node;
+    }
+
+    private void growNodes(int capacity) {
+        children = Arrays.copyOf(children, 4 * capacity);
+        firstBody = Arrays.copyOf(firstBody, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        internal = Arrays.copyOf(internal, capacity);
+        centerX = Arrays.copyOf(centerX, capacity);
+        centerY = Arrays.copyOf(centerY, capacity);
+        halfSize = Arrays.copyOf(halfSize, capacity);
+        nodeMass = Arrays.copyOf(nodeMass, capacity);
+        comX = Arrays.copyOf(comX, capacity);
+        comY = Arrays.copyOf(comY, capacity);
+        boxMinX = Arrays.copyOf(boxMinX, capacity);
+        boxMinY = Arrays.copyOf(boxMinY, capacity);
+        boxMaxX = Arrays.copyOf(boxMaxX, capacity);
+        boxMaxY = Arrays.copyOf(boxMaxY, capacity);
+    }
+}
@@ -0,0 +1,245 @@
+package org.example.spacesim2d;
+
+import java.util.Arrays;
+
+public class BlockTimesteps {
+    // hierarchical block timesteps: every object steps with dt / 2^level of the simulation step dt
+    // a step is split into 2^maxLevel ticks, an object on level l ends its own step every 2^(maxLevel - l) ticks
+    // all objects drift every sub step, but only those whose step ends get a force evaluation and a kick
+    // (kick-drift-kick leapfrog per object), so a few fast objects no longer force everyone onto a small step
+    //
+    // the timestep of an object is eta * |a| / |jerk|, with the jerk estimated from the change of its acceleration
+    // over its last step; new objects start from eta * |v| / |a|
+    // an object may move to a smaller step at any of its step ends, but to a larger one only where the ticks line up
+    // levels belong to objects, not slots: after adds, removes and merges every surviving object is found in
+    // its new slot and keeps its level, only new objects pick one from scratch
+    private int maxLevel = 10;
+    private double eta = 0.05;
+
+    private int version = -1;
+    private int[] level = new int[0];
+    private double[] lastAx = new double[0];
+    private double[] lastAy = new double[0];
+    // the object each slot held when the levels were last matched to the store, and the store's size then
+    private SpaceObject[] owner = new SpaceObject[0];
+    private int ownedSize;
+    // the arrays the levels are moved into when slots change, swapped with the ones above
+    private int[] movedLevel = new int[0];
+    private double[] movedAx = new double[0];
+    private double[] movedAy = new double[0];
+    private boolean[] isActive = new boolean[0];
+    private int[] active = new int[0];
+    private int[] levelCount;
+
+    private long forceEvaluations;
+    private long globalEvaluations;
+
+    public BlockTimesteps() {
+        levelCount = new int[maxLevel + 1];
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    public void setMaxLevel(int maxLevel) {
+        if (maxLevel < 0 || maxLevel > 30) {
+            throw new IllegalArgumentException("maxLevel must be between 0 and 30: " + maxLevel);
+        }
+        this.maxLevel = maxLevel;
+        levelCount = new int[maxLevel + 1];
+        // the old levels may not exist any more, everyone picks again
+        Arrays.fill(owner, null);
+        version = -1;
+    }
+
+    public double getEta() {
+        return eta;
+    }
+
+    public void setEta(double eta) {
+        if (!(eta > 0)) {
+            throw new IllegalArgumentException("eta must be positive: " + eta);
+        }
+        this.eta = eta;
+    }
+
+    public long getForceEvaluations() {
+        // forces evaluated on single objects so far
+        return forceEvaluations;
+    }
+
+    public long getGlobalEvaluations() {
+        // what a global step at the finest level in use would have evaluated, for comparison
+        return globalEvaluations;
+    }
+
+    void step(Simulation simulation, double dt) {
+        BodyStore bodies = simulation.getBodies();
+        int n = bodies.size;
+        if (bodies.version != version) {
+            remap(bodies);
+        }
+        double[] vx = bodies.vx;
+        double[] vy = bodies.vy;
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        double[] mass = bodies.mass;
+
+        int ticks = 1 << maxLevel;
+        double tickDt = dt / ticks;
+        int finest = 0;
+
+        // every object starts its own step at tick 0, open with half a kick
+        for (int i = 0; i < n; i++) {
+            if (level[i] < 0) {
+                setLevel(i, chooseInitialLevel(bodies, i, dt));
+            }
+            double half = stepDt(i, dt) / 2;
+            vx[i] += fx[i] / mass[i] * half;
+            vy[i] += fy[i] / mass[i] * half;
+        }
+
+        int tick = 0;
+        while (tick < ticks) {
+            int finestNow = finestLevel();
+            finest = Math.max(finest, finestNow);
+            int next = tick + (1 << (maxLevel - finestNow));
+            simulation.drift((next - tick) * tickDt);
+            tick = next;
+
+            // objects whose own step ends at this tick
+            int activeCount = 0;
+            for (int i = 0; i < n; i++) {
+                boolean ends = (tick & ((1 << (maxLevel - level[i])) - 1)) == 0;
+                isActive[i] = ends;
+                if (ends) {
+                    active[activeCount++] = i;
+                    lastAx[i] = fx[i] / mass[i];
+                    lastAy[i] = fy[i] / mass[i];
+                }
+            }
+            simulation.applyForces(active, activeCount, isActive);
+            forceEvaluations += activeCount;
+
+            for (int k = 0; k < activeCount; k++) {
+                int i = active[k];
+                double half = stepDt(i, dt) / 2;
+                vx[i] += fx[i] / mass[i] * half;
+                vy[i] += fy[i] / mass[i] * half;
+                if (tick < ticks) {
+                    setLevel(i, chooseLevel(bodies, i, dt, tick));
+                    half = stepDt(i, dt) / 2;
+                    vx[i] += fx[i] / mass[i] * half;
+                    vy[i] += fy[i] / mass[i] * half;
+                }
+            }
+        }
+        // pick the levels for the next step now that everyone is synchronised
+        for (int i = 0; i < n; i++) {
+            setLevel(i, chooseLevel(bodies, i, dt, 0));
+        }
+        globalEvaluations += (long) n << finest;
+    }
+
+    private int chooseInitialLevel(BodyStore bodies, int i, double dt) {
+        double a = Math.hypot(bodies.fx[i], bodies.fy[i]) / bodies.mass[i];
+        double v = Math.hypot(bodies.vx[i], bodies.vy[i]);
+        if (a == 0) {
+            return 0;
+        }
+        return levelFor(eta * v / a, dt);
+    }
+
+    private int chooseLevel(BodyStore bodies, int i, double dt, int tick) {
+        double ax = bodies.fx[i] / bodies.mass[i];
+        double ay = bodies.fy[i] / bodies.mass[i];
+        double jerk = Math.hypot(ax - lastAx[i], ay - lastAy[i]) / stepDt(i, dt);
+        int wanted = jerk > 0 ? levelFor(eta * Math.hypot(ax, ay) / jerk, dt) : 0;
+        // a larger step has to start on a tick that is a multiple of it
+        while (wanted < level[i] && (tick & ((1 << (maxLevel - wanted)) - 1)) != 0) {
+            wanted++;
+        }
+        return wanted;
+    }
+
+    private int levelFor(double wantedDt, double dt) {
+        if (!(wantedDt > 0)) {
+            return maxLevel;
+        }
+        double level = Math.ceil(Math.log(dt / wantedDt) / Math.log(2));
+        return (int) Math.min(Math.max(level, 0), maxLevel);
+    }
+
+    private double stepDt(int i, double dt) {
+        return dt / (1 << level[i]);
+    }
+
+    private void setLevel(int i, int newLevel) {
+        if (level[i] >= 0) {
+            levelCount[level[i]]--;
+        }
+        level[i] = newLevel;
+        levelCount[newLevel]++;
+    }
+
+    private int finestLevel() {
+        for (int l = maxLevel; l > 0; l--) {
+            if (levelCount[l] > 0) {
+                return l;
+            }
+        }
+        return 0;
+    }
+
+    private void remap(BodyStore bodies) {
+        // objects were added or removed and slots moved: every object owning a slot last time that is still
+        // in this store takes its level to the slot it is in now, the slots of new objects start at -1
+        int n = bodies.size;
+        if (level.length < n) {
+            int capacity = Math.max(n, level.length * 2);
+            level = Arrays.copyOf(level, capacity);
+            lastAx = Arrays.copyOf(lastAx, capacity);
+            lastAy = Arrays.copyOf(lastAy, capacity);
+            owner = Arrays.copyOf(owner, capacity);
+            movedLevel = new int[capacity];
+            movedAx = new double[capacity];
+            movedAy = new double[capacity];
+            isActive = new boolean[capacity];
+            active = new int[capacity];
+        }
+        Arrays.fill(movedLevel, 0, n, -1);
+        SpaceObject[] objects = bodies.objects;
+        for (int j = 0; j < ownedSize; j++) {
+            SpaceObject object = owner[j];
+            if (object == null) {
+                continue;
+            }
+            int i = object.getIndex();
+            if (i < n && objects[i] == object) {
+                movedLevel[i] = level[j];
+                movedAx[i] = lastAx[j];
+                movedAy[i] = lastAy[j];
+            }
+        }
+        int[] swapLevel = level;
+        level = movedLevel;
+        movedLevel = swapLevel;
+        double[] swapAx = lastAx;
+        lastAx = movedAx;
+        movedAx = swapAx;
+        double[] swapAy = lastAy;
+        lastAy = movedAy;
+        movedAy = swapAy;
+        System.arraycopy(objects, 0, owner, 0, n);
+        Arrays.fill(owner, n, Math.max(n, ownedSize), null);
+        ownedSize = n;
+        Arrays.fill(levelCount, 0);
+        for (int i = 0; i < n; i++) {
+            if (level[i] >= 0) {
+                levelCount[level[i]]++;
+            }
+        }
+        version = bodies.version;
+    }
+}
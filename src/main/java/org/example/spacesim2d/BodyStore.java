@@ -0,0 +1,145 @@
+package org.example.spacesim2d;
+
+import java.util.Arrays;
+
+public class BodyStore {
+    // structure of arrays holding the state of every object, one slot per object
+    // SpaceObject instances are handles pointing at a slot, the physics loops sweep the arrays directly
+    // slots are kept dense: removing moves the last object into the freed slot, so the tail is the free list
+    // and adding or removing an object is O(1) without allocating (apart from growing the arrays)
+
+    double[] x;
+    double[] y;
+    double[] vx;
+    double[] vy;
+    double[] fx;
+    double[] fy;
+    double[] mass;
+    double[] radius;
+    SpaceObject[] objects;
+    int size;
+    // changes whenever objects are added or removed, so per-slot data kept elsewhere knows to reset
+    int version;
+    // size of the periodic box, 0 when space does not wrap; separations between objects then use
+    // the nearest image, the kernels read these directly
+    double periodX;
+    double periodY;
+
+    public BodyStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        x = new double[capacity];
+        y = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        fx = new double[capacity];
+        fy = new double[capacity];
+        mass = new double[capacity];
+        radius = new double[capacity];
+        objects = new SpaceObject[capacity];
+    }
+
+    public BodyStore() {
+        this(16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public SpaceObject get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+        }
+        return objects[index];
+    }
+
+    double separationX(double dx) {
+        // dx reduced to its nearest periodic image
+        return periodX == 0 ? dx : dx - periodX * Math.rint(dx / periodX);
+    }
+
+    double separationY(double dy) {
+        return periodY == 0 ? dy : dy - periodY * Math.rint(dy / periodY);
+    }
+
+    int add(SpaceObject object, double radius, double mass, double x, double y, double vx, double vy, double fx, double fy) {
+        ensureCapacity(size + 1);
+        int index = size++;
+        version++;
+        this.x[index] = x;
+        this.y[index] = y;
+        this.vx[index] = vx;
+        this.vy[index] = vy;
+        this.fx[index] = fx;
+        this.fy[index] = fy;
+        this.mass[index] = mass;
+        this.radius[index] = radius;
+        objects[index] = object;
+        return index;
+    }
+
+    int addSlots(int count) {
+        // appends count zeroed slots without objects, the caller fills in the state and binds the handles
+        ensureCapacity(size + count);
+        int first = size;
+        size += count;
+        version++;
+        return first;
+    }
+
+    void attach(SpaceObject object) {
+        // copy the object's state into a new slot of this store and point the handle at it
+        int index = add(object, object.getRadius(), object.getMass(), object.getX(), object.getY(),
+                object.getVx(), object.getVy(), object.getFx(), object.getFy());
+        object.bind(this, index);
+    }
+
+    void remove(int index) {
+        // give the removed object a store of its own so the handle stays usable
+        SpaceObject removed = objects[index];
+        BodyStore own = new BodyStore(1);
+        own.attach(removed);
+        swapRemove(index);
+    }
+
+    void discard(int index) {
+        // like remove, but the handle is marked dead instead of kept usable, so nothing is allocated
+        objects[index].discard();
+        swapRemove(index);
+    }
+
+    private void swapRemove(int index) {
+        int last = size - 1;
+        if (index != last) {
+            x[index] = x[last];
+            y[index] = y[last];
+            vx[index] = vx[last];
+            vy[index] = vy[last];
+            fx[index] = fx[last];
+            fy[index] = fy[last];
+            mass[index] = mass[last];
+            radius[index] = radius[last];
+            objects[index] = objects[last];
+            objects[index].bind(this, index);
+        }
+        objects[last] = null;
+        size--;
+        version++;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        capacity = Math.max(capacity, x.length * 2);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        fx = Arrays.copyOf(fx, capacity);
+        fy = Arrays.copyOf(fy, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+    }
+}
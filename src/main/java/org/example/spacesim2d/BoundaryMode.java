@@ -0,0 +1,14 @@
+package org.example.spacesim2d;
+
+public enum BoundaryMode {
+    // what happens at the edges of the simulation area
+
+    // solid walls, objects bounce off them with their speed kept
+    REFLECTIVE,
+    // the area wraps around like a torus, an object leaving on one side comes back on the other and
+    // gravity and collisions use the nearest image of every other object
+    PERIODIC,
+    // no edges, objects fly on forever; the broad phase, Barnes-Hut and the mesh solvers size themselves
+    // to wherever the objects are, so nothing has to track the extent of space
+    OPEN
+}
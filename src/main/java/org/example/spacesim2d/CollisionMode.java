@@ -0,0 +1,11 @@
+package org.example.spacesim2d;
+
+public enum CollisionMode {
+    // what happens when two objects touch
+
+    // elastic bounce along the line between the centres, what the simulation always did
+    ELASTIC,
+    // perfectly inelastic accretion: the lighter object is absorbed into the heavier one,
+    // mass, momentum and total area are conserved, the player ship always absorbs the other object
+    MERGE
+}
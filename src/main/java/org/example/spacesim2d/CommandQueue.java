@@ -0,0 +1,47 @@
+package org.example.spacesim2d;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+final class CommandQueue<T> {
+    // unbounded lock-free queue for many producers and a single consumer, a linked list in the style of Vyukov
+    // offer is one atomic swap of the tail plus a volatile link, poll only reads and writes the consumer's
+    // own head, so neither side locks or retries the way a multi-consumer queue's CAS loops do
+    // between a producer's swap and its link the consumer sees the list end there, the element is then
+    // picked up by a later poll; elements of one producer come out in the order they went in
+    private final AtomicReference<Node<T>> tail;
+    // consumer only, a spent node whose next is the oldest element
+    private Node<T> head;
+
+    CommandQueue() {
+        head = new Node<>(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    void offer(T value) {
+        Node<T> node = new Node<>(Objects.requireNonNull(value));
+        tail.getAndSet(node).next = node;
+    }
+
+    T poll() {
+        // consumer thread only
+        Node<T> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        T value = next.value;
+        // the node stays as the new head, drop the value so it can be collected
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    private static final class Node<T> {
+        T value;
+        volatile Node<T> next;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package org.example.spacesim2d;
 
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
 import javafx.scene.paint.Color;
 
 public class Controller {
     private Scene scene;
-    private Simulation simulation;
+    // the simulation runs on the scheduler's thread, user input is submitted to it as InputEvents
+    private SimulationScheduler scheduler;
+    private SimulationRenderer renderer = new SimulationRenderer();
     private GraphicsContext gc;
     private double speed = 1;
     private int width;
@@ -23,43 +28,59 @@ public class Controller {
     private double minDensity = 0.01;
     private double previewVelocityScale = 1.5e-2;
     private boolean sizeChange = false;
-    private Ship ship;
+    private volatile Ship ship;
     private double densityChangeScale = 0.03;
     private double radiusChangeScale = 0.3;
+    private boolean showMetrics = false;
 
-    public Controller(Scene scene, Simulation simulation, GraphicsContext gc) {
+    public Controller(Scene scene, SimulationScheduler scheduler, GraphicsContext gc) {
         this.scene = scene;
-        this.simulation = simulation;
+        this.scheduler = scheduler;
         this.gc = gc;
+        scheduler.setSpeed(speed);
         scene.setOnMousePressed(this::handleMousePress);
         scene.setOnMouseReleased(this::handleMouseRelease);
         scene.setOnScroll(this::handleScroll);
+        scene.setOnKeyPressed(this::handleKeyPress);
         width = (int) scene.getWidth();
         height = (int) scene.getHeight();
+        // a scene loaded from a snapshot can already contain a ship, the physics thread is not running yet
+        ship = scheduler.getSimulation().getShip();
+        if (ship != null) {
+            scene.setOnMouseMoved(this::handleMouseMove);
+        }
     }
 
     public void loop() {
-        simulation.update(speed);
+        // rendering only, the physics runs on its own thread
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        SimulationSnapshot snapshot = scheduler.acquireSnapshot();
         clear();
-        simulation.drawSimulationObjects(gc);
+        renderer.drawSnapshot(gc, snapshot, scheduler.getInterpolationAlpha(snapshot, System.nanoTime()));
         if (preview != null) {
-            preview.draw(gc);
+            renderer.draw(gc, preview);
             // draw arrow
             gc.setStroke(Color.YELLOW);
             gc.setLineWidth(3);
             gc.strokeLine(preview.getX(), preview.getY(), mouseX, mouseY);
         }
+        if (showMetrics) {
+            renderer.drawOverlay(gc);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.record(Metrics.Phase.LOOP, start);
+        }
     }
 
     public void clear() {
-        // clear canvas
-        gc.clearRect(0, 0, width, height);
+        // clear canvas, an opaque fill covers everything so no clearRect is needed
         gc.setFill(Color.BLACK);
         gc.fillRect(0, 0, width, height);
     }
 
     public void initSim() {
-        simulation.drawSimulationObjects(gc);
+        SimulationSnapshot snapshot = scheduler.acquireSnapshot();
+        renderer.drawSnapshot(gc, snapshot, 1);
     }
 
     private void handleMousePress(MouseEvent clickEvent) {
@@ -74,37 +95,50 @@ public class Controller {
                 mouseY = dragEvent.getY();
             });
         } else if (clickEvent.isSecondaryButtonDown()) {
-            SpaceObject temp = simulation.getObjectAt(x, y);
-            if (temp != null) {
-                simulation.remove(temp);
-                if (temp == ship) {
+            // removes the object under the mouse, or creates the ship
+            InputEvent event = InputEvent.click(x, y);
+            scheduler.submit(simulation -> {
+                SpaceObject changed = simulation.apply(event);
+                if (changed != null && changed == ship) {
                     ship = null;
+                } else if (changed instanceof Ship created) {
+                    ship = created;
+                    Platform.runLater(() -> scene.setOnMouseMoved(this::handleMouseMove));
                 }
-            } else if (ship == null) {
-                ship = new Ship(5, 80, x, y, 0, 0, 0, scene);
-                simulation.add(ship);
-            }
+            });
         }
     }
 
     private void handleMouseRelease(MouseEvent clickEvent) {
-        if (preview != null && simulation.getObjectAt(preview.getX(), preview.getY()) == null) {
-            SpaceObject closest = simulation.getObjectClosestTo(preview.getX(), preview.getY());
-            if (closest == null || preview.getDistanceToObject(closest) > preview.getRadius() + closest.getRadius()) {
-                SpaceObject mouse = new SpaceObject(mouseX, mouseY);
-                double[] normal = preview.getNormalVectorToObject(mouse);
-                double distance = preview.getDistanceToObject(mouse);
-                if (!Double.isNaN(distance) && distance > 0) {
-                    preview.setVx(normal[0] * distance * previewVelocityScale);
-                    preview.setVy(normal[1] * distance * previewVelocityScale);
-                }
-                simulation.add(preview);
+        if (preview != null) {
+            SpaceObject created = preview;
+            SpaceObject mouse = new SpaceObject(mouseX, mouseY);
+            double[] normal = created.getNormalVectorToObject(mouse);
+            double distance = created.getDistanceToObject(mouse);
+            if (!Double.isNaN(distance) && distance > 0) {
+                created.setVx(normal[0] * distance * previewVelocityScale);
+                created.setVy(normal[1] * distance * previewVelocityScale);
             }
+            InputEvent event = InputEvent.add(created.getRadius(), created.getDensity(),
+                    created.getX(), created.getY(), created.getVx(), created.getVy());
+            scheduler.submit(simulation -> simulation.apply(event));
         }
         scene.setOnMouseDragged(null);
         preview = null;
     }
 
+    private void handleMouseMove(MouseEvent moveEvent) {
+        InputEvent event = InputEvent.mouse(moveEvent.getX(), moveEvent.getY());
+        scheduler.submit(simulation -> simulation.apply(event));
+    }
+
+    private void handleKeyPress(KeyEvent keyEvent) {
+        // M shows and hides the metrics overlay
+        if (keyEvent.getCode() == KeyCode.M) {
+            showMetrics = !showMetrics;
+        }
+    }
+
     private void handleScroll(ScrollEvent scrollEvent) {
         sizeChange = true;
         mouseX = scrollEvent.getX();
@@ -118,7 +152,7 @@ public class Controller {
             sizeChange = false;
             preview = null;
             if (ship != null) {
-                scene.setOnMouseMoved(ship::updateMouse);
+                scene.setOnMouseMoved(this::handleMouseMove);
             } else {
                 scene.setOnMouseMoved(null);
             }
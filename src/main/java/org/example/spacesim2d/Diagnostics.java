@@ -0,0 +1,254 @@
+package org.example.spacesim2d;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+public class Diagnostics {
+    // conserved quantities of a running simulation, sampled every few steps into a bounded time series
+    // the potential energy falls out of the force pass the step does anyway: for the 1 / r^2 law the virial
+    // sum over objects of r . F equals the sum over pairs of -G m1 m2 / r, so it is an O(n) sweep over the
+    // forces right after the solver instead of DriftReport's O(n^2) pass; it is as accurate as the solver
+    // (approximate for Barnes-Hut and the mesh solvers) and with softening it is the virial, not the softened
+    // potential; kinetic energy, momentum, angular momentum about the origin and centre of mass are another
+    // O(n) sweep after the step
+    // the potential is NaN in a periodic box, where the nearest image forces have no such sum, and in steps
+    // without a force pass on every object, which block timesteps only do at the end of a full step
+    // merges and the ship's thrust act between the force pass and the sample, so such steps are off a little
+    // the physics thread samples, any thread can read or export; the oldest samples are dropped when full
+    public static final String HEADER = "# step,objects,mass,kinetic,potential,total,px,py,angular,com_x,com_y,virial_ratio";
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final int every;
+    private final int capacity;
+    // ring buffer columns, sample k of size is at (start + k) % capacity
+    private final long[] steps;
+    private final int[] objects;
+    private final double[] mass;
+    private final double[] kinetic;
+    private final double[] potential;
+    private final double[] px;
+    private final double[] py;
+    private final double[] angular;
+    private final double[] comX;
+    private final double[] comY;
+    private int start;
+    private int size;
+    // r . F summed over the last force pass on every object, and the step that pass belongs to
+    private double virial;
+    private long virialStep = -1;
+
+    public Diagnostics(int every, int capacity) {
+        if (every < 1) {
+            throw new IllegalArgumentException("diagnostics interval must be at least 1 step: " + every);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("diagnostics capacity must be at least 1: " + capacity);
+        }
+        this.every = every;
+        this.capacity = capacity;
+        steps = new long[capacity];
+        objects = new int[capacity];
+        mass = new double[capacity];
+        kinetic = new double[capacity];
+        potential = new double[capacity];
+        px = new double[capacity];
+        py = new double[capacity];
+        angular = new double[capacity];
+        comX = new double[capacity];
+        comY = new double[capacity];
+    }
+
+    public Diagnostics(int every) {
+        this(every, DEFAULT_CAPACITY);
+    }
+
+    public int getEvery() {
+        return every;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    boolean isDue(long step) {
+        return step % every == 0;
+    }
+
+    void captureVirial(BodyStore bodies, long step) {
+        // called right after the solver filled the force accumulators for the positions at the end of step;
+        // the positions are taken relative to the centre of mass, which leaves the sum unchanged since the
+        // pair forces add up to zero, but keeps large coordinates from cancelling away its digits
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] m = bodies.mass;
+        double total = 0;
+        double cx = 0;
+        double cy = 0;
+        for (int i = 0; i < n; i++) {
+            total += m[i];
+            cx += m[i] * x[i];
+            cy += m[i] * y[i];
+        }
+        if (total > 0) {
+            cx /= total;
+            cy /= total;
+        }
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += (x[i] - cx) * fx[i] + (y[i] - cy) * fy[i];
+        }
+        virial = sum;
+        virialStep = step;
+    }
+
+    void sample(BodyStore bodies, long step, boolean periodic) {
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] vx = bodies.vx;
+        double[] vy = bodies.vy;
+        double[] m = bodies.mass;
+        double totalMass = 0;
+        double energy = 0;
+        double momentumX = 0;
+        double momentumY = 0;
+        double angularMomentum = 0;
+        double centreX = 0;
+        double centreY = 0;
+        for (int i = 0; i < n; i++) {
+            double mi = m[i];
+            totalMass += mi;
+            energy += 0.5 * mi * (vx[i] * vx[i] + vy[i] * vy[i]);
+            momentumX += mi * vx[i];
+            momentumY += mi * vy[i];
+            angularMomentum += mi * (x[i] * vy[i] - y[i] * vx[i]);
+            centreX += mi * x[i];
+            centreY += mi * y[i];
+        }
+        if (totalMass > 0) {
+            centreX /= totalMass;
+            centreY /= totalMass;
+        }
+        double potentialEnergy = !periodic && virialStep == step ? virial : Double.NaN;
+        synchronized (this) {
+            int k = (start + size) % capacity;
+            if (size == capacity) {
+                start = (start + 1) % capacity;
+            } else {
+                size++;
+            }
+            steps[k] = step;
+            objects[k] = n;
+            mass[k] = totalMass;
+            kinetic[k] = energy;
+            potential[k] = potentialEnergy;
+            px[k] = momentumX;
+            py[k] = momentumY;
+            angular[k] = angularMomentum;
+            comX[k] = centreX;
+            comY[k] = centreY;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    // sample i of size(), oldest first
+
+    public synchronized long getStep(int i) {
+        return steps[slot(i)];
+    }
+
+    public synchronized int getObjectCount(int i) {
+        return objects[slot(i)];
+    }
+
+    public synchronized double getMass(int i) {
+        return mass[slot(i)];
+    }
+
+    public synchronized double getKineticEnergy(int i) {
+        return kinetic[slot(i)];
+    }
+
+    public synchronized double getPotentialEnergy(int i) {
+        return potential[slot(i)];
+    }
+
+    public synchronized double getTotalEnergy(int i) {
+        int k = slot(i);
+        return kinetic[k] + potential[k];
+    }
+
+    public synchronized double getMomentumX(int i) {
+        return px[slot(i)];
+    }
+
+    public synchronized double getMomentumY(int i) {
+        return py[slot(i)];
+    }
+
+    public synchronized double getAngularMomentum(int i) {
+        return angular[slot(i)];
+    }
+
+    public synchronized double getCenterOfMassX(int i) {
+        return comX[slot(i)];
+    }
+
+    public synchronized double getCenterOfMassY(int i) {
+        return comY[slot(i)];
+    }
+
+    public synchronized double getVirialRatio(int i) {
+        // 2K / |W|, 1 for a system in equilibrium
+        int k = slot(i);
+        return 2 * kinetic[k] / Math.abs(potential[k]);
+    }
+
+    public synchronized String toCsv() {
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < size; i++) {
+            int k = slot(i);
+            csv.append(String.format(Locale.ROOT, "%d,%d,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s%n", steps[k], objects[k], mass[k],
+                    kinetic[k], potential[k], kinetic[k] + potential[k], px[k], py[k], angular[k], comX[k], comY[k],
+                    2 * kinetic[k] / Math.abs(potential[k])));
+        }
+        return csv.toString();
+    }
+
+    public void export(Path path) throws IOException {
+        // the series is copied under the lock and written outside it, so sampling never waits for the disk
+        Files.writeString(path, toCsv());
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (size == 0) {
+            return "no diagnostics samples";
+        }
+        int k = slot(size - 1);
+        return String.format(Locale.ROOT, "step %d: energy %.6e (kinetic %.6e, potential %.6e), momentum (%.3e, %.3e), "
+                        + "angular momentum %.6e, centre of mass (%.3f, %.3f), virial ratio %.4f", steps[k],
+                kinetic[k] + potential[k], kinetic[k], potential[k], px[k], py[k], angular[k], comX[k], comY[k],
+                2 * kinetic[k] / Math.abs(potential[k]));
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("sample " + i + " out of bounds for size " + size);
+        }
+        return (start + i) % capacity;
+    }
+}
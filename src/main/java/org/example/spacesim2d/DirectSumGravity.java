@@ -0,0 +1,44 @@
+package org.example.spacesim2d;
+
+public class DirectSumGravity implements GravitySolver {
+    // exact O(n^2) pairwise sum, used as the reference for the approximate solvers
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G) {
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        double[] mass = bodies.mass;
+        double periodX = bodies.periodX;
+        double periodY = bodies.periodY;
+        boolean periodic = periodX != 0;
+        for (int i = 0; i < n - 1; i++) {
+            double x1 = x[i];
+            double y1 = y[i];
+            double m1 = mass[i];
+            double fx1 = 0;
+            double fy1 = 0;
+            for (int j = i + 1; j < n; j++) {
+                double dx = x[j] - x1;
+                double dy = y[j] - y1;
+                if (periodic) {
+                    // nearest image in a periodic box
+                    dx -= periodX * Math.rint(dx / periodX);
+                    dy -= periodY * Math.rint(dy / periodY);
+                }
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                double force = (G * m1 * mass[j]) / (distance * distance);
+                double pfx = force * dx / distance;
+                double pfy = force * dy / distance;
+                fx1 += pfx;
+                fy1 += pfy;
+                fx[j] -= pfx;
+                fy[j] -= pfy;
+            }
+            fx[i] += fx1;
+            fy[i] += fy1;
+        }
+    }
+}
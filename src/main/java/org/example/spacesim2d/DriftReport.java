@@ -0,0 +1,110 @@
+package org.example.spacesim2d;
+
+import java.util.Locale;
+
+public class DriftReport {
+    // tracks how far total energy, linear momentum and angular momentum wander from their starting values
+    // energy drift is relative to |E0|, momentum drifts are relative to the sum of |m v| and |m r x v| at the start
+    // computing the potential energy is an O(n^2) pass, so sample every few hundred steps rather than every step
+    private final double initialEnergy;
+    private final double initialPx;
+    private final double initialPy;
+    private final double initialAngular;
+    private final double momentumScale;
+    private final double angularScale;
+    private double energyDrift;
+    private double momentumDrift;
+    private double angularDrift;
+    private int samples;
+
+    public DriftReport(Simulation simulation) {
+        BodyStore bodies = simulation.getBodies();
+        initialEnergy = getKineticEnergy(bodies) + getPotentialEnergy(bodies, simulation.getG());
+        initialPx = getMomentumX(bodies);
+        initialPy = getMomentumY(bodies);
+        initialAngular = getAngularMomentum(bodies);
+        double momentum = 0;
+        double angular = 0;
+        for (int i = 0; i < bodies.size; i++) {
+            double m = bodies.mass[i];
+            momentum += m * Math.hypot(bodies.vx[i], bodies.vy[i]);
+            angular += m * Math.abs(bodies.x[i] * bodies.vy[i] - bodies.y[i] * bodies.vx[i]);
+        }
+        momentumScale = momentum > 0 ? momentum : 1;
+        angularScale = angular > 0 ? angular : 1;
+    }
+
+    public void sample(Simulation simulation) {
+        BodyStore bodies = simulation.getBodies();
+        double energy = getKineticEnergy(bodies) + getPotentialEnergy(bodies, simulation.getG());
+        double dpx = getMomentumX(bodies) - initialPx;
+        double dpy = getMomentumY(bodies) - initialPy;
+        energyDrift = Math.max(energyDrift, Math.abs(energy - initialEnergy) / Math.abs(initialEnergy));
+        momentumDrift = Math.max(momentumDrift, Math.hypot(dpx, dpy) / momentumScale);
+        angularDrift = Math.max(angularDrift, Math.abs(getAngularMomentum(bodies) - initialAngular) / angularScale);
+        samples++;
+    }
+
+    public double getEnergyDrift() {
+        return energyDrift;
+    }
+
+    public double getMomentumDrift() {
+        return momentumDrift;
+    }
+
+    public double getAngularMomentumDrift() {
+        return angularDrift;
+    }
+
+    public static double getKineticEnergy(BodyStore bodies) {
+        double energy = 0;
+        for (int i = 0; i < bodies.size; i++) {
+            energy += 0.5 * bodies.mass[i] * (bodies.vx[i] * bodies.vx[i] + bodies.vy[i] * bodies.vy[i]);
+        }
+        return energy;
+    }
+
+    public static double getPotentialEnergy(BodyStore bodies, double G) {
+        // matches the 1 / r^2 force law of the gravity solvers
+        double energy = 0;
+        for (int i = 0; i < bodies.size - 1; i++) {
+            for (int j = i + 1; j < bodies.size; j++) {
+                double dx = bodies.x[j] - bodies.x[i];
+                double dy = bodies.y[j] - bodies.y[i];
+                energy -= G * bodies.mass[i] * bodies.mass[j] / Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+        return energy;
+    }
+
+    private static double getMomentumX(BodyStore bodies) {
+        double momentum = 0;
+        for (int i = 0; i < bodies.size; i++) {
+            momentum += bodies.mass[i] * bodies.vx[i];
+        }
+        return momentum;
+    }
+
+    private static double getMomentumY(BodyStore bodies) {
+        double momentum = 0;
+        for (int i = 0; i < bodies.size; i++) {
+            momentum += bodies.mass[i] * bodies.vy[i];
+        }
+        return momentum;
+    }
+
+    private static double getAngularMomentum(BodyStore bodies) {
+        double angular = 0;
+        for (int i = 0; i < bodies.size; i++) {
+            angular += bodies.mass[i] * (bodies.x[i] * bodies.vy[i] - bodies.y[i] * bodies.vx[i]);
+        }
+        return angular;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "max drift over %d samples: energy %.3e, momentum %.3e, angular momentum %.3e",
+                samples, energyDrift, momentumDrift, angularDrift);
+    }
+}
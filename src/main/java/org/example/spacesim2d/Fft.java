@@ -0,0 +1,67 @@
+package org.example.spacesim2d;
+
+class Fft {
+    // in-place iterative radix-2 complex FFT of one power of two length
+    // the bit reversal and twiddle tables are built once, transforms allocate nothing
+    private final int n;
+    private final int[] reversed;
+    private final double[] cos;
+    private final double[] sin;
+
+    Fft(int n) {
+        if (n < 1 || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("FFT length must be a power of two: " + n);
+        }
+        this.n = n;
+        int bits = Integer.numberOfTrailingZeros(n);
+        reversed = new int[n];
+        for (int i = 0; i < n; i++) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        cos = new double[Math.max(n / 2, 1)];
+        sin = new double[cos.length];
+        for (int k = 0; k < n / 2; k++) {
+            double angle = -2 * Math.PI * k / n;
+            cos[k] = Math.cos(angle);
+            sin[k] = Math.sin(angle);
+        }
+    }
+
+    int length() {
+        return n;
+    }
+
+    void transform(double[] re, double[] im, int offset, boolean inverse) {
+        // transforms re and im from offset to offset + n, unscaled: the caller divides an inverse by n
+        for (int i = 0; i < n; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double t = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = t;
+                t = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = t;
+            }
+        }
+        double sign = inverse ? -1 : 1;
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int stride = n / size;
+            for (int start = offset; start < offset + n; start += size) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * stride];
+                    double wi = sign * sin[k * stride];
+                    int a = start + k;
+                    int b = a + half;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
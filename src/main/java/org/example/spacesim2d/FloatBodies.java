@@ -0,0 +1,65 @@
+package org.example.spacesim2d;
+
+final class FloatBodies {
+    // float copies of the columns the float pair loop reads, refreshed from the body store before every
+    // force pass, and float accumulators for the pull on one tile of partners, zero between flushes
+    // they sit next to the double columns, 12 bytes per object on top of the body store, and are dropped
+    // when the solver goes back to double
+    // coordinates are stored relative to the middle of the occupied area, which keeps them small and
+    // their rounding error at half of what the absolute coordinates would have
+    float[] x = new float[0];
+    float[] y = new float[0];
+    float[] mass = new float[0];
+    float[] tileFx = new float[0];
+    float[] tileFy = new float[0];
+    float periodX;
+    float periodY;
+    int size;
+
+    void load(BodyStore bodies, int tile) {
+        int n = bodies.size;
+        if (x.length < n) {
+            int capacity = Math.max(n, 2 * x.length);
+            x = new float[capacity];
+            y = new float[capacity];
+            mass = new float[capacity];
+        }
+        if (tileFx.length < tile) {
+            tileFx = new float[tile];
+            tileFy = new float[tile];
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double[] sourceX = bodies.x;
+        double[] sourceY = bodies.y;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, sourceX[i]);
+            maxX = Math.max(maxX, sourceX[i]);
+            minY = Math.min(minY, sourceY[i]);
+            maxY = Math.max(maxY, sourceY[i]);
+        }
+        double originX = n > 0 ? (minX + maxX) / 2 : 0;
+        double originY = n > 0 ? (minY + maxY) / 2 : 0;
+        double[] sourceMass = bodies.mass;
+        for (int i = 0; i < n; i++) {
+            x[i] = (float) (sourceX[i] - originX);
+            y[i] = (float) (sourceY[i] - originY);
+            mass[i] = (float) sourceMass[i];
+        }
+        periodX = (float) bodies.periodX;
+        periodY = (float) bodies.periodY;
+        size = n;
+    }
+
+    void flush(BodyStore bodies, double G, int tileStart, int tileEnd) {
+        // adds the tile accumulators, which hold the pull per unit G, to the double forces and clears them
+        for (int j = tileStart; j < tileEnd; j++) {
+            bodies.fx[j] += G * tileFx[j - tileStart];
+            bodies.fy[j] += G * tileFy[j - tileStart];
+            tileFx[j - tileStart] = 0;
+            tileFy[j - tileStart] = 0;
+        }
+    }
+}
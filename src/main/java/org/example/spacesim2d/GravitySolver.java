@@ -0,0 +1,41 @@
+package org.example.spacesim2d;
+
+public interface GravitySolver {
+    // adds the gravitational force acting on every object to its force accumulator
+    void applyGravity(BodyStore bodies, double G);
+
+    // adds the force from all objects to the listed objects only, used by block timesteps
+    // where just a few objects need a new force at a time
+    default void applyGravity(BodyStore bodies, double G, int[] active, int activeCount) {
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] mass = bodies.mass;
+        double periodX = bodies.periodX;
+        double periodY = bodies.periodY;
+        boolean periodic = periodX != 0;
+        for (int k = 0; k < activeCount; k++) {
+            int i = active[k];
+            double fx = 0;
+            double fy = 0;
+            for (int j = 0; j < n; j++) {
+                if (j == i) {
+                    continue;
+                }
+                double dx = x[j] - x[i];
+                double dy = y[j] - y[i];
+                if (periodic) {
+                    // nearest image in a periodic box
+                    dx -= periodX * Math.rint(dx / periodX);
+                    dy -= periodY * Math.rint(dy / periodY);
+                }
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                double force = (G * mass[i] * mass[j]) / (distance * distance);
+                fx += force * dx / distance;
+                fy += force * dy / distance;
+            }
+            bodies.fx[i] += fx;
+            bodies.fy[i] += fy;
+        }
+    }
+}
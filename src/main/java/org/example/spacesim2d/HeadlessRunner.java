@@ -0,0 +1,304 @@
+package org.example.spacesim2d;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+public class HeadlessRunner {
+    // runs a simulation without JavaFX, as fast as possible, for batch and server use
+    // usage: HeadlessRunner --scenario in.csv | --snapshot in.snap | --generate KIND --steps N [--out out.csv]
+    //                       [--width W] [--height H] [--count N] [--seed S] [--drift true|false]
+    //                       [--speed S] [--solver direct|parallel|barnes-hut|pm|p3m|simd] [--theta T] [--mesh-cell S]
+    //                       [--softening E] [--precision double|float] [--threads N]
+    //                       [--integrator euler|leapfrog|yoshida4|block] [--eta E] [--report-every K]
+    //                       [--checkpoint out.snap] [--checkpoint-every K] [--record out.traj] [--record-every K]
+    //                       [--diagnostics out.csv] [--diagnostics-every K]
+    //                       [--collisions elastic|merge] [--continuous true|false]
+    //                       [--boundary reflective|periodic|open] [--inputs log.csv] [--hash-every K] [--hashes out.txt] [--verify ref.txt]
+    // a snapshot brings its own size, G and step counter, so --width and --height only apply to scenarios
+    // --generate builds a ScenarioGenerator scene (uniform, plummer, kepler-disk, colliding-galaxies)
+    // of --count objects from --seed; --drift false skips the O(n^2) energy drift report for huge scenes
+    // --inputs replays an input log recorded by the interactive simulation, starting empty unless a scenario
+    // or snapshot is given, --hash-every writes a StateHash every K steps to --hashes, and --verify stops
+    // with exit code 3 at the first step whose hash differs from such a reference file
+    // --diagnostics samples energy, momentum and centre of mass every K steps (10) from the force pass and
+    // writes the series at the end, the last sample is printed
+    // with -Dspacesim2d.metrics=true the phase timings are printed at the end and published over JMX
+    private Path scenario;
+    private Path snapshot;
+    private ScenarioGenerator generate;
+    private int count = 10000;
+    private long seed = 1;
+    private boolean reportDrift = true;
+    private Path checkpoint;
+    private long checkpointEvery;
+    private Path record;
+    private int recordEvery = 1;
+    private Path diagnostics;
+    private int diagnosticsEvery = 10;
+    private Path inputs;
+    private long hashEvery;
+    private Path hashes;
+    private Path verify;
+    private Path out;
+    private long steps = 1000;
+    private int width = 1400;
+    private int height = 800;
+    private double speed = 1;
+    private String solver = "direct";
+    private double theta = 0.5;
+    private double meshCell = 8;
+    private double softening;
+    private Precision precision = Precision.DOUBLE;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Integrator integrator = Integrator.EULER;
+    private CollisionMode collisions = CollisionMode.ELASTIC;
+    private boolean continuous;
+    private BoundaryMode boundary = BoundaryMode.REFLECTIVE;
+    private long reportEvery;
+    private double eta = -1;
+
+    public static void main(String[] args) {
+        HeadlessRunner runner = new HeadlessRunner();
+        try {
+            runner.parseArgs(args);
+            runner.run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (StateDivergenceException e) {
+            // exit code 3 means only this, scripts comparing runs rely on it
+            System.err.println(e.getMessage());
+            System.exit(3);
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--scenario" -> scenario = Path.of(value);
+                case "--snapshot" -> snapshot = Path.of(value);
+                case "--generate" -> generate = ScenarioGenerator.of(value);
+                case "--count" -> count = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--drift" -> reportDrift = Boolean.parseBoolean(value);
+                case "--out" -> out = Path.of(value);
+                case "--checkpoint" -> checkpoint = Path.of(value);
+                case "--checkpoint-every" -> checkpointEvery = Long.parseLong(value);
+                case "--record" -> record = Path.of(value);
+                case "--record-every" -> recordEvery = Integer.parseInt(value);
+                case "--diagnostics" -> diagnostics = Path.of(value);
+                case "--diagnostics-every" -> diagnosticsEvery = Integer.parseInt(value);
+                case "--steps" -> steps = Long.parseLong(value);
+                case "--width" -> width = Integer.parseInt(value);
+                case "--height" -> height = Integer.parseInt(value);
+                case "--speed" -> speed = Double.parseDouble(value);
+                case "--solver" -> solver = value;
+                case "--theta" -> theta = Double.parseDouble(value);
+                case "--mesh-cell" -> meshCell = Double.parseDouble(value);
+                case "--softening" -> softening = Double.parseDouble(value);
+                case "--precision" -> precision = Precision.valueOf(value.toUpperCase(Locale.ROOT));
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--integrator" -> integrator = Integrator.valueOf(value.toUpperCase(Locale.ROOT));
+                case "--report-every" -> reportEvery = Long.parseLong(value);
+                case "--eta" -> eta = Double.parseDouble(value);
+                case "--collisions" -> collisions = CollisionMode.valueOf(value.toUpperCase(Locale.ROOT));
+                case "--continuous" -> continuous = Boolean.parseBoolean(value);
+                case "--boundary" -> boundary = BoundaryMode.valueOf(value.toUpperCase(Locale.ROOT));
+                case "--inputs" -> inputs = Path.of(value);
+                case "--hash-every" -> hashEvery = Long.parseLong(value);
+                case "--hashes" -> hashes = Path.of(value);
+                case "--verify" -> verify = Path.of(value);
+                default -> throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        int sources = (scenario != null ? 1 : 0) + (snapshot != null ? 1 : 0) + (generate != null ? 1 : 0);
+        if (sources > 1) {
+            throw new IllegalArgumentException("only one of --scenario, --snapshot and --generate can be given");
+        }
+        if (sources == 0 && inputs == null) {
+            throw new IllegalArgumentException("one of --scenario, --snapshot, --generate or --inputs is required");
+        }
+        if (hashes != null && hashEvery <= 0) {
+            throw new IllegalArgumentException("--hashes needs --hash-every");
+        }
+        if (checkpointEvery > 0 && checkpoint == null) {
+            throw new IllegalArgumentException("--checkpoint-every needs --checkpoint");
+        }
+        if (precision != Precision.DOUBLE && !solver.equals("simd")) {
+            throw new IllegalArgumentException("--precision float needs --solver simd");
+        }
+    }
+
+    GravitySolver createSolver(Simulation simulation) {
+        return switch (solver) {
+            case "direct" -> new DirectSumGravity();
+            case "parallel" -> new ParallelDirectSumGravity(new ForkJoinPool(threads));
+            case "barnes-hut" -> new BarnesHutGravity(theta, threads > 1 ? new ForkJoinPool(threads) : null);
+            // the mesh covers the area with cells of about --mesh-cell, p3m adds the exact close pairs
+            case "pm", "p3m" -> ParticleMeshGravity.forArea(simulation.getWidth(), simulation.getHeight(), meshCell,
+                    solver.equals("p3m"), threads > 1 ? new ForkJoinPool(threads) : null);
+            case "simd" -> new VectorDirectSumGravity(softening, precision);
+            default -> throw new IllegalArgumentException("unknown solver " + solver);
+        };
+    }
+
+    void run() throws IOException {
+        if (Metrics.ENABLED) {
+            Metrics.register();
+        }
+        Simulation simulation;
+        if (snapshot != null) {
+            simulation = SnapshotIO.read(snapshot);
+        } else if (scenario != null) {
+            simulation = new Simulation(ScenarioIO.read(scenario), width, height);
+        } else if (generate != null) {
+            simulation = generate.create(count, seed, width, height);
+        } else {
+            simulation = new Simulation(width, height);
+        }
+        simulation.setGravitySolver(createSolver(simulation));
+        if (solver.equals("simd")) {
+            // the Vector API is an optional module, say which loops the run gets
+            if (VectorDirectSumGravity.isVectorized()) {
+                System.out.printf(Locale.ROOT, "simd solver: vectorized, %d %s lanes%n",
+                        VectorDirectSumGravity.lanes(precision), precision.name().toLowerCase(Locale.ROOT));
+            } else {
+                System.out.println("simd solver: scalar, add --add-modules jdk.incubator.vector for the SIMD loops");
+            }
+        }
+        simulation.setIntegrator(integrator);
+        simulation.setCollisionMode(collisions);
+        simulation.setContinuousCollisions(continuous);
+        simulation.setBoundaryMode(boundary);
+        if (eta > 0) {
+            simulation.getBlockTimesteps().setEta(eta);
+        }
+        if (diagnostics != null) {
+            // room for every sample of the run
+            int capacity = (int) Math.min(steps / Math.max(diagnosticsEvery, 1) + 1, 1 << 20);
+            simulation.setDiagnostics(new Diagnostics(diagnosticsEvery, capacity));
+        }
+        InputLog inputLog = inputs != null ? InputLog.read(inputs) : null;
+        // a replay steps the state as loaded, like the interactive simulation did
+        if (inputLog == null) {
+            simulation.applyForces();
+        }
+        Map<Long, Long> reference = verify != null ? readHashes(verify) : Map.of();
+        DriftReport drift = reportDrift ? new DriftReport(simulation) : null;
+        int matched = 0;
+
+        long elapsed = 0;
+        // the recorder and the hash file are closed on a divergence too, so both end complete at that step
+        try (TrajectoryRecorder recorder = record != null ? new TrajectoryRecorder(record, recordEvery) : null;
+             BufferedWriter hashWriter = hashes != null ? Files.newBufferedWriter(hashes) : null) {
+            if (hashWriter != null) {
+                hashWriter.write("# step,hash");
+                hashWriter.newLine();
+            }
+            simulation.setRecorder(recorder);
+            for (long i = 1; i <= steps; i++) {
+                if (inputLog != null) {
+                    inputLog.replay(simulation);
+                }
+                long start = System.nanoTime();
+                simulation.update(speed);
+                elapsed += System.nanoTime() - start;
+                long step = simulation.getStep();
+                Long expected = reference.get(step);
+                boolean hashed = hashWriter != null && step % hashEvery == 0;
+                if (hashed || expected != null) {
+                    long hash = StateHash.of(simulation);
+                    if (hashed) {
+                        hashWriter.write(String.format(Locale.ROOT, "%d,%016x", step, hash));
+                        hashWriter.newLine();
+                    }
+                    if (expected != null && expected != hash) {
+                        throw new StateDivergenceException(step);
+                    }
+                    if (expected != null) {
+                        matched++;
+                    }
+                }
+                if (drift != null && reportEvery > 0 && i % reportEvery == 0) {
+                    drift.sample(simulation);
+                }
+                if (checkpointEvery > 0 && i % checkpointEvery == 0) {
+                    SnapshotIO.write(checkpoint, simulation);
+                }
+            }
+            simulation.setRecorder(null);
+        }
+        if (drift != null) {
+            drift.sample(simulation);
+        }
+        if (diagnostics != null) {
+            simulation.getDiagnostics().export(diagnostics);
+        }
+        double seconds = elapsed / 1e9;
+
+        System.out.printf(Locale.ROOT, "%d objects, %d steps in %.3f s (%.1f steps/s)%n",
+                simulation.getBodies().size(), steps, seconds, steps / seconds);
+        if (drift != null) {
+            System.out.println(drift);
+        }
+        if (diagnostics != null) {
+            System.out.println(simulation.getDiagnostics());
+        }
+        if (collisions == CollisionMode.MERGE) {
+            System.out.println(simulation.getMerges() + " objects absorbed in merges");
+        }
+        if (integrator == Integrator.BLOCK) {
+            BlockTimesteps blocks = simulation.getBlockTimesteps();
+            System.out.printf(Locale.ROOT, "%d force evaluations, %d with a global step at the finest level%n",
+                    blocks.getForceEvaluations(), blocks.getGlobalEvaluations());
+        }
+        if (Metrics.ENABLED) {
+            System.out.print(Metrics.summary());
+        }
+        if (out != null) {
+            ScenarioIO.write(out, simulation);
+        }
+        if (checkpoint != null) {
+            SnapshotIO.write(checkpoint, simulation);
+        }
+        if (verify != null) {
+            System.out.println("matched " + matched + " of " + reference.size() + " reference hashes");
+        }
+    }
+
+    static Map<Long, Long> readHashes(Path path) throws IOException {
+        Map<Long, Long> hashes = new HashMap<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(path)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(",");
+            try {
+                hashes.put(Long.parseLong(parts[0].trim()), Long.parseUnsignedLong(parts[1].trim(), 16));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException(path + ":" + lineNumber + ": expected step,hash", e);
+            }
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.spacesim2d;
+
+public class InputEvent {
+    // a user input that changes the simulation, applied on the physics thread between steps
+    // events are stamped with the step they were applied before, so a log of them replays a run exactly
+    public enum Type {
+        // place a new object unless it overlaps another one
+        ADD,
+        // remove the object under the point, or create the ship there if there is none yet
+        CLICK,
+        // move the point the ships steer towards
+        MOUSE
+    }
+
+    private static final SpaceObject[] NO_OBJECTS = new SpaceObject[0];
+
+    private final Type type;
+    private long step = -1;
+    private final double x;
+    private final double y;
+    private final double vx;
+    private final double vy;
+    private final double radius;
+    private final double density;
+
+    private InputEvent(Type type, double x, double y, double vx, double vy, double radius, double density) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.vx = vx;
+        this.vy = vy;
+        this.radius = radius;
+        this.density = density;
+    }
+
+    public static InputEvent add(double radius, double density, double x, double y, double vx, double vy) {
+        return new InputEvent(Type.ADD, x, y, vx, vy, radius, density);
+    }
+
+    public static InputEvent click(double x, double y) {
+        return new InputEvent(Type.CLICK, x, y, 0, 0, 0, 0);
+    }
+
+    public static InputEvent mouse(double x, double y) {
+        return new InputEvent(Type.MOUSE, x, y, 0, 0, 0, 0);
+    }
+
+    static InputEvent of(Type type, long step, double x, double y, double vx, double vy, double radius, double density) {
+        InputEvent event = new InputEvent(type, x, y, vx, vy, radius, density);
+        event.step = step;
+        return event;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getStep() {
+        // the step the event was applied before, -1 while it has not been applied
+        return step;
+    }
+
+    void setStep(long step) {
+        this.step = step;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getVx() {
+        return vx;
+    }
+
+    public double getVy() {
+        return vy;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public double getDensity() {
+        return density;
+    }
+
+    SpaceObject apply(Simulation simulation) {
+        // returns the object that was added or removed, or null
+        switch (type) {
+            case ADD -> {
+                SpaceObject created = new SpaceObject(radius, density, x, y, vx, vy);
+                if (simulation.getObjectsInRange(x, y, radius, NO_OBJECTS) == 0) {
+                    simulation.add(created);
+                    return created;
+                }
+                return null;
+            }
+            case CLICK -> {
+                SpaceObject target = simulation.getObjectAt(x, y);
+                if (target != null) {
+                    simulation.remove(target);
+                    return target;
+                }
+                if (simulation.getShip() == null) {
+                    Ship ship = new Ship(5, 80, x, y, 0, 0, 0, simulation.getWidth(), simulation.getHeight());
+                    simulation.add(ship);
+                    return ship;
+                }
+                return null;
+            }
+            case MOUSE -> {
+                Ship ship = simulation.getShip();
+                if (ship != null) {
+                    ship.setMouse(x, y);
+                }
+                return null;
+            }
+            default -> throw new IllegalStateException("unknown event type " + type);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.spacesim2d;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class InputLog {
+    // the user inputs of a run in the order they were applied, stamped with their step
+    // replaying them against the same starting state and settings reproduces the run bit for bit
+    // text format, one event per line: step,type,x,y,vx,vy,radius,density
+    public static final String HEADER = "# step,type,x,y,vx,vy,radius,density";
+
+    private final List<InputEvent> events = new ArrayList<>();
+    private int replayed;
+
+    public void add(InputEvent event) {
+        events.add(event);
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    public InputEvent get(int index) {
+        return events.get(index);
+    }
+
+    public void replay(Simulation simulation) {
+        // applies the logged events that belong before the simulation's next step, call it before every update
+        while (replayed < events.size() && events.get(replayed).getStep() <= simulation.getStep()) {
+            InputEvent event = events.get(replayed++);
+            if (event.getStep() < simulation.getStep()) {
+                throw new IllegalStateException("input for step " + event.getStep()
+                        + " but the simulation is already at step " + simulation.getStep());
+            }
+            event.apply(simulation);
+        }
+    }
+
+    public static InputLog read(Path path) throws IOException {
+        InputLog log = new InputLog();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            long previousStep = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if (parts.length != 8) {
+                    throw new IOException(path + ":" + lineNumber + ": expected 8 values but got " + parts.length);
+                }
+                try {
+                    long step = Long.parseLong(parts[0].trim());
+                    if (step < previousStep) {
+                        throw new IOException(path + ":" + lineNumber + ": steps must not go backwards");
+                    }
+                    previousStep = step;
+                    log.add(InputEvent.of(InputEvent.Type.valueOf(parts[1].trim().toUpperCase(Locale.ROOT)), step,
+                            Double.parseDouble(parts[2]), Double.parseDouble(parts[3]),
+                            Double.parseDouble(parts[4]), Double.parseDouble(parts[5]),
+                            Double.parseDouble(parts[6]), Double.parseDouble(parts[7])));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return log;
+    }
+
+    public void write(Path path) throws IOException {
+        // doubles are written in full precision so the replay sees exactly the same values
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (InputEvent event : events) {
+                writer.write(String.format(Locale.ROOT, "%d,%s,%s,%s,%s,%s,%s,%s",
+                        event.getStep(), event.getType().name().toLowerCase(Locale.ROOT), event.getX(), event.getY(),
+                        event.getVx(), event.getVy(), event.getRadius(), event.getDensity()));
+                writer.newLine();
+            }
+        }
+    }
+}
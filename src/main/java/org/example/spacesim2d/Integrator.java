@@ -0,0 +1,54 @@
+package org.example.spacesim2d;
+
+public enum Integrator {
+    // how one simulation step advances positions and velocities
+    // the forces from the end of a step are kept in the body store and reused at the start of the next one,
+    // so every step costs as many force evaluations as listed below
+
+    // first order, one force evaluation per step, what the simulation always used
+    EULER {
+        @Override
+        void step(Simulation simulation, double dt) {
+            simulation.move(dt);
+            simulation.applyForces();
+        }
+    },
+    // second order velocity Verlet (kick-drift-kick leapfrog), one force evaluation per step
+    LEAPFROG {
+        @Override
+        void step(Simulation simulation, double dt) {
+            leapfrog(simulation, dt);
+        }
+    },
+    // fourth order Yoshida triple jump of three leapfrog steps (the Forest-Ruth coefficients),
+    // three force evaluations per step but the error falls with dt^4
+    YOSHIDA4 {
+        @Override
+        void step(Simulation simulation, double dt) {
+            leapfrog(simulation, W1 * dt);
+            leapfrog(simulation, W0 * dt);
+            leapfrog(simulation, W1 * dt);
+        }
+    },
+    // leapfrog with a power of two timestep per object, chosen from its acceleration and jerk,
+    // only the objects whose own step ends get a new force, see BlockTimesteps
+    BLOCK {
+        @Override
+        void step(Simulation simulation, double dt) {
+            simulation.getBlockTimesteps().step(simulation, dt);
+        }
+    };
+
+    private static final double CBRT2 = Math.cbrt(2);
+    private static final double W1 = 1 / (2 - CBRT2);
+    private static final double W0 = -CBRT2 / (2 - CBRT2);
+
+    abstract void step(Simulation simulation, double dt);
+
+    private static void leapfrog(Simulation simulation, double dt) {
+        simulation.kick(dt / 2);
+        simulation.drift(dt);
+        simulation.applyForces();
+        simulation.kick(dt / 2);
+    }
+}
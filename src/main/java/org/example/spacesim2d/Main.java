@@ -3,6 +3,7 @@ package org.example.spacesim2d;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
@@ -12,17 +13,50 @@ import javafx.stage.Stage;
 import javafx.util.Duration;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
 
 public class Main extends Application {
     private Simulation simulation;
+    private SimulationScheduler scheduler;
+    private SimulationServices services;
     private GraphicsContext gc;
     private int width = 1400;
     private int height = 800;
     private double speed = 1;
+    private double stepsPerSecond = 1000.0 / 16;
     private double playerInGame = 0;
+    private Path inputLogPath;
 
     @Override
     public void start(Stage stage) throws IOException {
+        // --snapshot=file resumes a checkpoint written by SnapshotIO instead of starting empty
+        String snapshot = getParameters().getNamed().get("snapshot");
+        if (snapshot != null) {
+            simulation = SnapshotIO.read(Path.of(snapshot));
+            width = simulation.getWidth();
+            height = simulation.getHeight();
+        } else if (getParameters().getNamed().containsKey("generate")) {
+            // --generate=plummer|uniform|kepler-disk|colliding-galaxies with --count=N and --seed=S builds a test scene
+            Map<String, String> named = getParameters().getNamed();
+            simulation = ScenarioGenerator.of(named.get("generate")).create(Integer.parseInt(named.getOrDefault("count", "2000")),
+                    Long.parseLong(named.getOrDefault("seed", "1")), width, height);
+        } else {
+            simulation = new Simulation(width, height);
+        }
+        // --boundary=reflective|periodic|open picks what happens at the edges of the window
+        String boundary = getParameters().getNamed().get("boundary");
+        if (boundary != null) {
+            simulation.setBoundaryMode(BoundaryMode.valueOf(boundary.toUpperCase(Locale.ROOT)));
+        }
+        // --record-inputs=file logs the user input so HeadlessRunner --inputs can replay the run
+        String recordInputs = getParameters().getNamed().get("record-inputs");
+        if (recordInputs != null) {
+            inputLogPath = Path.of(recordInputs);
+            simulation.setInputLog(new InputLog());
+        }
+
         Pane root = new Pane();
         Canvas canvas = new Canvas(width, height);
         gc = canvas.getGraphicsContext2D();
@@ -32,11 +66,48 @@ public class Main extends Application {
         stage.setScene(scene);
         stage.show();
 
-        simulation = new Simulation(width, height);
+        scheduler = new SimulationScheduler(simulation, stepsPerSecond);
+        // failures are printed on the physics thread; once a step has failed the window keeps the last state
+        // and says so in its title
+        scheduler.setFailureHandler(e -> {
+            System.err.print("physics thread: ");
+            e.printStackTrace();
+            if (!scheduler.isRunning()) {
+                Platform.runLater(() -> stage.setTitle("Space Sim 2D - simulation stopped: " + e));
+            }
+        });
+        if (Metrics.ENABLED) {
+            Metrics.register();
+        }
+
+        // --autosave=file writes a snapshot every --autosave-every seconds (30) and on exit,
+        // --record=file records the trajectory every --record-every steps (1) and
+        // --metrics-export=file writes the metrics summary every --metrics-every seconds (5) and
+        // --diagnostics=file samples energy and momentum every --diagnostics-every steps (10) and writes
+        // the series every 5 seconds, all of them on virtual threads
+        Map<String, String> named = getParameters().getNamed();
+        services = new SimulationServices(scheduler);
+        if (named.containsKey("autosave")) {
+            services.startAutosave(Path.of(named.get("autosave")),
+                    (long) (Double.parseDouble(named.getOrDefault("autosave-every", "30")) * 1000));
+        }
+        if (named.containsKey("record")) {
+            services.startRecording(Path.of(named.get("record")), Integer.parseInt(named.getOrDefault("record-every", "1")));
+        }
+        if (named.containsKey("metrics-export")) {
+            services.startMetricsExport(Path.of(named.get("metrics-export")),
+                    (long) (Double.parseDouble(named.getOrDefault("metrics-every", "5")) * 1000));
+        }
+        if (named.containsKey("diagnostics")) {
+            simulation.setDiagnostics(new Diagnostics(Integer.parseInt(named.getOrDefault("diagnostics-every", "10"))));
+            services.startDiagnosticsExport(Path.of(named.get("diagnostics")), 5000);
+        }
 
-        Controller controller = new Controller(scene, simulation, gc);
+        Controller controller = new Controller(scene, scheduler, gc);
+        scheduler.start();
         controller.initSim();
 
+        // the timeline only renders, the physics steps at a fixed rate on the scheduler's thread
 
         Timeline timeline = new Timeline(
                 new KeyFrame(
@@ -47,7 +118,20 @@ public class Main extends Application {
         timeline.play();
     }
 
+    @Override
+    public void stop() throws InterruptedException, IOException {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+        if (services != null) {
+            services.close();
+        }
+        if (inputLogPath != null) {
+            simulation.getInputLog().write(inputLogPath);
+        }
+    }
+
     public static void main(String[] args) {
-        launch();
+        launch(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+package org.example.spacesim2d;
+
+import com.sun.management.ThreadMXBean;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+public final class Metrics implements MetricsMXBean {
+    // instrumentation of the hot paths, switched on with -Dspacesim2d.metrics=true
+    // the switch is a static final constant, so with it off the JIT drops every guarded call and the
+    // instrumented code runs as if it was not there; call sites read the clock themselves:
+    //   long start = Metrics.ENABLED ? System.nanoTime() : 0;
+    //   ...
+    //   if (Metrics.ENABLED) Metrics.record(Metrics.Phase.COLLISIONS, start);
+    // every phase keeps a histogram of its durations in power of two nanosecond buckets
+    // each phase and counter is written by a single thread, physics or render, so recording is plain
+    // stores; the overlay and JMX read them from other threads and may see values a moment old
+    public static final boolean ENABLED = Boolean.getBoolean("spacesim2d.metrics");
+    public static final String OBJECT_NAME = "org.example.spacesim2d:type=Metrics";
+    private static final int BUCKETS = 64;
+
+    public enum Phase {
+        // integrator step, including the force evaluation
+        MOVE,
+        COLLISIONS,
+        WALLS,
+        // the whole Simulation.update
+        STEP,
+        DRAW,
+        // one frame of Controller.loop
+        LOOP
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final long[][] histograms = new long[PHASES.length][BUCKETS];
+    private static final long[] totalNanos = new long[PHASES.length];
+    private static final long[] maxNanos = new long[PHASES.length];
+    private static long pairTests;
+    private static long contacts;
+    private static long allocatedBytes;
+    private static long lastStepAllocatedBytes;
+    private static long allocationSteps;
+    private static final ThreadMXBean threads = ENABLED ? allocationThreads() : null;
+    private static final Metrics INSTANCE = new Metrics();
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    public static void record(Phase phase, long startNanos) {
+        long nanos = Math.max(System.nanoTime() - startNanos, 0);
+        int p = phase.ordinal();
+        histograms[p][Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1)]++;
+        totalNanos[p] += nanos;
+        if (nanos > maxNanos[p]) {
+            maxNanos[p] = nanos;
+        }
+    }
+
+    public static void addPairTests(long count) {
+        pairTests += count;
+    }
+
+    public static void addContacts(long count) {
+        contacts += count;
+    }
+
+    public static long allocatedBytes() {
+        // bytes allocated by the calling thread so far, -1 if the JVM cannot tell
+        return threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    public static void recordStep(long startNanos, long allocatedAtStart) {
+        record(Phase.STEP, startNanos);
+        if (allocatedAtStart >= 0) {
+            lastStepAllocatedBytes = allocatedBytes() - allocatedAtStart;
+            allocatedBytes += lastStepAllocatedBytes;
+            allocationSteps++;
+        }
+    }
+
+    public static long count(Phase phase) {
+        long count = 0;
+        for (long bucket : histograms[phase.ordinal()]) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    public static double meanNanos(Phase phase) {
+        long count = count(phase);
+        return count == 0 ? 0 : (double) totalNanos[phase.ordinal()] / count;
+    }
+
+    public static long percentileNanos(Phase phase, double fraction) {
+        // upper bound of the bucket holding the percentile, so at most twice the true value
+        long[] histogram = histograms[phase.ordinal()];
+        long rank = (long) Math.ceil(count(phase) * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram[b];
+            if (seen >= rank && seen > 0) {
+                return b == 0 ? 0 : (1L << b) - 1;
+            }
+        }
+        return 0;
+    }
+
+    public static long maxNanos(Phase phase) {
+        return maxNanos[phase.ordinal()];
+    }
+
+    public static String summary() {
+        StringBuilder text = new StringBuilder();
+        for (Phase phase : PHASES) {
+            if (count(phase) == 0) {
+                continue;
+            }
+            text.append(String.format(Locale.ROOT, "%-10s n %-8d mean %8.3f ms  p50 < %8.3f ms  p99 < %8.3f ms  max %8.3f ms%n",
+                    phase.name().toLowerCase(Locale.ROOT), count(phase), meanNanos(phase) / 1e6,
+                    percentileNanos(phase, 0.5) / 1e6, percentileNanos(phase, 0.99) / 1e6, maxNanos(phase) / 1e6));
+        }
+        long steps = count(Phase.STEP);
+        if (steps > 0) {
+            text.append(String.format(Locale.ROOT, "pair tests %.1f per step, contacts %.2f per step%n",
+                    (double) pairTests / steps, (double) contacts / steps));
+        }
+        if (allocationSteps > 0) {
+            text.append(String.format(Locale.ROOT, "allocated %.0f bytes per step, %d in the last one%n",
+                    (double) allocatedBytes / allocationSteps, lastStepAllocatedBytes));
+        }
+        return text.toString();
+    }
+
+    public static synchronized void register() {
+        // publishes the metrics on the platform MBean server, once
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by another class loader, theirs is as good as ours
+        } catch (JMException e) {
+            throw new IllegalStateException("could not register " + OBJECT_NAME, e);
+        }
+        registered = true;
+    }
+
+    public static void clear() {
+        for (int p = 0; p < PHASES.length; p++) {
+            Arrays.fill(histograms[p], 0);
+            totalNanos[p] = 0;
+            maxNanos[p] = 0;
+        }
+        pairTests = 0;
+        contacts = 0;
+        allocatedBytes = 0;
+        lastStepAllocatedBytes = 0;
+        allocationSteps = 0;
+    }
+
+    private static ThreadMXBean allocationThreads() {
+        if (ManagementFactory.getThreadMXBean() instanceof ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public long getSteps() {
+        return count(Phase.STEP);
+    }
+
+    @Override
+    public long getPairTests() {
+        return pairTests;
+    }
+
+    @Override
+    public long getContacts() {
+        return contacts;
+    }
+
+    @Override
+    public long getLastStepAllocatedBytes() {
+        return lastStepAllocatedBytes;
+    }
+
+    @Override
+    public double getAllocatedBytesPerStep() {
+        return allocationSteps == 0 ? 0 : (double) allocatedBytes / allocationSteps;
+    }
+
+    @Override
+    public PhaseStats[] getPhases() {
+        PhaseStats[] stats = new PhaseStats[PHASES.length];
+        for (Phase phase : PHASES) {
+            stats[phase.ordinal()] = new PhaseStats(phase.name(), count(phase), meanNanos(phase),
+                    percentileNanos(phase, 0.5), percentileNanos(phase, 0.99), maxNanos(phase));
+        }
+        return stats;
+    }
+
+    @Override
+    public String getSummary() {
+        return summary();
+    }
+
+    @Override
+    public void reset() {
+        clear();
+    }
+
+    public static final class PhaseStats {
+        // one row of the phase table in JMX, the getters become the columns
+        private final String name;
+        private final long count;
+        private final double meanNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        PhaseStats(String name, long count, double meanNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+            this.name = name;
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.spacesim2d;
+
+public interface MetricsMXBean {
+    // the instrumentation as seen over JMX, registered as org.example.spacesim2d:type=Metrics
+    boolean isEnabled();
+
+    long getSteps();
+
+    long getPairTests();
+
+    long getContacts();
+
+    long getLastStepAllocatedBytes();
+
+    double getAllocatedBytesPerStep();
+
+    Metrics.PhaseStats[] getPhases();
+
+    String getSummary();
+
+    void reset();
+}
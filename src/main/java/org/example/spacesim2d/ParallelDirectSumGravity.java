@@ -0,0 +1,93 @@
+package org.example.spacesim2d;
+
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelDirectSumGravity implements GravitySolver {
+    // exact direct sum spread over a ForkJoinPool
+    // every object sums the pull of all others over its full row in index order and only writes its own force,
+    // so no two threads touch the same slot and the result is bitwise identical for any thread count
+    // this does twice the pair work of DirectSumGravity, which pays off from a few threads up
+    private final ForkJoinPool pool;
+    private final ParallelRange.Body rows = this::applyRows;
+    private final ParallelRange.Body activeRows = this::applyActiveRows;
+    private BodyStore bodies;
+    private int[] active;
+    private double G;
+
+    public ParallelDirectSumGravity(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ParallelDirectSumGravity() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G) {
+        this.bodies = bodies;
+        this.G = G;
+        ParallelRange.run(pool, bodies.size, ParallelRange.chunksFor(pool), rows);
+        this.bodies = null;
+    }
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G, int[] active, int activeCount) {
+        this.bodies = bodies;
+        this.G = G;
+        this.active = active;
+        ParallelRange.run(pool, activeCount, ParallelRange.chunksFor(pool), activeRows);
+        this.bodies = null;
+        this.active = null;
+    }
+
+    private void applyRows(int chunk, int from, int to) {
+        for (int i = from; i < to; i++) {
+            applyRow(i);
+        }
+    }
+
+    private void applyActiveRows(int chunk, int from, int to) {
+        for (int k = from; k < to; k++) {
+            applyRow(active[k]);
+        }
+    }
+
+    private void applyRow(int i) {
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        double[] mass = bodies.mass;
+        double periodX = bodies.periodX;
+        double periodY = bodies.periodY;
+        boolean periodic = periodX != 0;
+        double x1 = x[i];
+        double y1 = y[i];
+        double m1 = mass[i];
+        double fx1 = 0;
+        double fy1 = 0;
+        for (int j = 0; j < n; j++) {
+            if (j == i) {
+                continue;
+            }
+            double dx = x[j] - x1;
+            double dy = y[j] - y1;
+            if (periodic) {
+                // nearest image in a periodic box
+                dx -= periodX * Math.rint(dx / periodX);
+                dy -= periodY * Math.rint(dy / periodY);
+            }
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            double force = (G * m1 * mass[j]) / (distance * distance);
+            fx1 += force * dx / distance;
+            fy1 += force * dy / distance;
+        }
+        fx[i] += fx1;
+        fy[i] += fy1;
+    }
+}
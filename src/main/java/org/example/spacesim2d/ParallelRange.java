@@ -0,0 +1,49 @@
+package org.example.spacesim2d;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+class ParallelRange extends RecursiveAction {
+    // splits [0, n) into a fixed number of chunks and runs them on a ForkJoinPool
+    // chunk boundaries only depend on n and the chunk count, never on scheduling
+    interface Body {
+        void run(int chunk, int from, int to);
+    }
+
+    private final Body body;
+    private final int n;
+    private final int chunks;
+    private final int lo;
+    private final int hi;
+
+    private ParallelRange(Body body, int n, int chunks, int lo, int hi) {
+        this.body = body;
+        this.n = n;
+        this.chunks = chunks;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    static void run(ForkJoinPool pool, int n, int chunks, Body body) {
+        if (chunks <= 1) {
+            body.run(0, 0, n);
+            return;
+        }
+        pool.invoke(new ParallelRange(body, n, chunks, 0, chunks));
+    }
+
+    static int chunksFor(ForkJoinPool pool) {
+        // a few chunks per thread so uneven chunks still balance out
+        return pool.getParallelism() * 4;
+    }
+
+    @Override
+    protected void compute() {
+        if (hi - lo == 1) {
+            body.run(lo, (int) ((long) lo * n / chunks), (int) ((long) hi * n / chunks));
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new ParallelRange(body, n, chunks, lo, mid), new ParallelRange(body, n, chunks, mid, hi));
+    }
+}
@@ -0,0 +1,535 @@
+package org.example.spacesim2d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParticleMeshGravity implements GravitySolver {
+    // particle-mesh gravity for very many objects: masses are spread onto a grid with cloud-in-cell weights,
+    // convolved by FFT with the force a unit mass exerts, and the grid force is read back with the same weights
+    // the force law here is G m1 m2 / r^2, which is not the kernel of 2D Poisson, so instead of solving
+    // Poisson's equation the grid is convolved with that force directly; with the same weights both ways
+    // and an odd kernel there is no self force and momentum is conserved
+    // without the short range correction (PM) the kernel is the plain force at the grid offsets, so forces
+    // are smoothed over a cell or two, which is the cheapest mode for dust where single encounters do not matter
+    // with it (P3M) the force is split with a gaussian of width a (SPLIT cells): the grid carries the smooth
+    // long range part erf(r / 2a) / r^2 - exp(-r^2 / 4a^2) / (a sqrt(pi) r), which it resolves well, and the
+    // rest is summed exactly for pairs closer than CUTOFF widths from a cell list, so close encounters are as
+    // accurate as the direct sum; a pair at the cutoff loses about 5% of its force, overall it is under 1%
+    // an open area is covered by a grid fitted to the objects and zero padded to twice its size,
+    // so no images leak in; a periodic box is covered exactly and the kernel takes the nearest image
+    // the kernel spectrum is kept until the grid spacing has to change, a step costs two FFTs
+    // with block timesteps the field is only computed on the passes over every object, at the end of a full
+    // step; the substeps in between read the long range part for their few objects from that field, which
+    // is smooth enough that it hardly changes within a step, and sum the short range part at the current
+    // positions, so a substep costs a cell list instead of a deposit and two FFTs
+    private static final double SPLIT = 0.7;
+    private static final double CUTOFF = 4.0;
+    // the fitted grid is only respaced when the objects need more room or use less than 1 / REFIT of it
+    private static final double REFIT = 1.25;
+
+    private final int cellsX;
+    private final int cellsY;
+    private final boolean shortRange;
+    private final ForkJoinPool pool;
+    private final ParallelRange.Body forces = this::applyForces;
+    private final ParallelRange.Body activeForces = this::applyActiveForces;
+    private final ParallelRange.Body rows = this::transformRows;
+    private final ParallelRange.Body columns = this::transformColumns;
+
+    // state of the current evaluation
+    private BodyStore bodies;
+    private double G;
+    private int[] active;
+    private int chunks;
+    private boolean periodic;
+    private boolean inverse;
+
+    // grid, gridX by gridY nodes for the FFT, of which the objects use cellsX by cellsY
+    private int gridX;
+    private int gridY;
+    private double spacingX;
+    private double spacingY;
+    private double originX;
+    private double originY;
+    private double split;
+    private double cutoff;
+    private Fft fftX;
+    private Fft fftY;
+    private double[] workRe = new double[0];
+    private double[] workIm = new double[0];
+    private double[] kernelRe = new double[0];
+    private double[] kernelIm = new double[0];
+    private double[][] columnRe = new double[0][];
+    private double[][] columnIm = new double[0][];
+    private double kernelSpacingX;
+    private double kernelSpacingY;
+    private boolean kernelPeriodic;
+
+    // cell list for the short range pairs
+    private double boundsMinX;
+    private double boundsMinY;
+    private double listSizeX;
+    private double listSizeY;
+    private int listX;
+    private int listY;
+    private int[] listStart = new int[0];
+    private int[] listOrder = new int[0];
+    private int[] listCell = new int[0];
+
+    // store, size and version the field was computed for, reusing it needs all three unchanged
+    private BodyStore meshStore;
+    private int meshSize;
+    private int meshVersion;
+
+    public ParticleMeshGravity(int cellsX, int cellsY, boolean shortRange, ForkJoinPool pool) {
+        if (cellsX < 4 || cellsY < 4 || Integer.bitCount(cellsX) != 1 || Integer.bitCount(cellsY) != 1) {
+            throw new IllegalArgumentException("grid cells must be powers of two of at least 4: " + cellsX + " x " + cellsY);
+        }
+        this.cellsX = cellsX;
+        this.cellsY = cellsY;
+        this.shortRange = shortRange;
+        this.pool = pool;
+    }
+
+    public static ParticleMeshGravity forArea(double width, double height, double cellSize, boolean shortRange, ForkJoinPool pool) {
+        // a grid with cells of about cellSize over the area, rounded up to powers of two
+        return new ParticleMeshGravity(cellsFor(width / cellSize), cellsFor(height / cellSize), shortRange, pool);
+    }
+
+    private static int cellsFor(double cells) {
+        int rounded = (int) Math.min(Math.ceil(Math.max(cells, 4)), 1 << 14);
+        return Integer.highestOneBit(rounded - 1) << 1;
+    }
+
+    public int getCellsX() {
+        return cellsX;
+    }
+
+    public int getCellsY() {
+        return cellsY;
+    }
+
+    public boolean isShortRange() {
+        return shortRange;
+    }
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G) {
+        if (bodies.size < 2) {
+            return;
+        }
+        prepare(bodies, G);
+        ParallelRange.run(pool, bodies.size, chunks, forces);
+        this.bodies = null;
+    }
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G, int[] active, int activeCount) {
+        if (bodies.size < 2) {
+            return;
+        }
+        if (bodies == meshStore && bodies.size == meshSize && bodies.version == meshVersion && fitsMesh(bodies)) {
+            reuse(bodies, G);
+        } else {
+            prepare(bodies, G);
+        }
+        this.active = active;
+        ParallelRange.run(pool, activeCount, chunks, activeForces);
+        this.active = null;
+        this.bodies = null;
+    }
+
+    private void prepare(BodyStore bodies, double G) {
+        // computes the long range force field on the grid for the current positions
+        this.bodies = bodies;
+        this.G = G;
+        chunks = pool != null ? ParallelRange.chunksFor(pool) : 1;
+        periodic = bodies.periodX != 0;
+        placeGrid();
+        deposit();
+        // rows beyond cellsY hold no mass and their forces are not needed, the FFT skips them
+        int usedRows = periodic ? gridY : cellsY;
+        transform(false, usedRows);
+        for (int k = 0; k < gridX * gridY; k++) {
+            double re = workRe[k] * kernelRe[k] - workIm[k] * kernelIm[k];
+            double im = workRe[k] * kernelIm[k] + workIm[k] * kernelRe[k];
+            workRe[k] = re;
+            workIm[k] = im;
+        }
+        transform(true, usedRows);
+        if (shortRange) {
+            buildCellList();
+        }
+        meshStore = bodies;
+        meshSize = bodies.size;
+        meshVersion = bodies.version;
+    }
+
+    private boolean fitsMesh(BodyStore bodies) {
+        // the same objects are still inside the part of the grid whose field was computed, with the
+        // cloud-in-cell weights one cell to spare; also takes the bounds for the cell list
+        if (bodies.periodX != 0) {
+            return true;
+        }
+        int n = bodies.size;
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, bodies.x[i]);
+            minY = Math.min(minY, bodies.y[i]);
+            maxX = Math.max(maxX, bodies.x[i]);
+            maxY = Math.max(maxY, bodies.y[i]);
+        }
+        boundsMinX = minX;
+        boundsMinY = minY;
+        return minX >= originX && minY >= originY
+                && maxX < originX + spacingX * (cellsX - 1) && maxY < originY + spacingY * (cellsY - 1);
+    }
+
+    private void reuse(BodyStore bodies, double G) {
+        // keeps the field of the last pass, only the short range pairs need the current positions
+        this.bodies = bodies;
+        this.G = G;
+        chunks = pool != null ? ParallelRange.chunksFor(pool) : 1;
+        if (shortRange) {
+            buildCellList();
+        }
+    }
+
+    private void placeGrid() {
+        double spacingX;
+        double spacingY;
+        if (periodic) {
+            gridX = cellsX;
+            gridY = cellsY;
+            spacingX = bodies.periodX / cellsX;
+            spacingY = bodies.periodY / cellsY;
+            originX = 0;
+            originY = 0;
+        } else {
+            int n = bodies.size;
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, bodies.x[i]);
+                minY = Math.min(minY, bodies.y[i]);
+                maxX = Math.max(maxX, bodies.x[i]);
+                maxY = Math.max(maxY, bodies.y[i]);
+            }
+            boundsMinX = minX;
+            boundsMinY = minY;
+            gridX = 2 * cellsX;
+            gridY = 2 * cellsY;
+            // two cells to spare, so the cloud-in-cell weights never reach past the used part of the grid
+            double needed = Math.max((maxX - minX) / (cellsX - 2), (maxY - minY) / (cellsY - 2));
+            spacingX = kernelPeriodic || this.spacingX == 0 ? 0 : this.spacingX;
+            if (needed == 0) {
+                spacingX = spacingX == 0 ? 1 : spacingX;
+            } else if (spacingX < needed || spacingX > REFIT * needed) {
+                spacingX = needed * (1 + REFIT) / 2;
+            }
+            spacingY = spacingX;
+            originX = (minX + maxX) / 2 - spacingX * (cellsX - 1) / 2;
+            originY = (minY + maxY) / 2 - spacingY * (cellsY - 1) / 2;
+        }
+        this.spacingX = spacingX;
+        this.spacingY = spacingY;
+        split = SPLIT * Math.max(spacingX, spacingY);
+        cutoff = CUTOFF * split;
+        if (periodic) {
+            // the nearest image only reaches half way across the box
+            cutoff = Math.min(cutoff, Math.min(bodies.periodX, bodies.periodY) / 2);
+        }
+        if (columnRe.length < chunks || columnRe[0].length != gridY) {
+            columnRe = new double[chunks][gridY];
+            columnIm = new double[chunks][gridY];
+        }
+        if (spacingX != kernelSpacingX || spacingY != kernelSpacingY || periodic != kernelPeriodic || kernelRe.length != gridX * gridY) {
+            buildKernel();
+        }
+    }
+
+    private void buildKernel() {
+        // the long range force of a unit mass at every grid offset, x in the real and y in the imaginary part:
+        // both are real, so one complex transform carries the two and the product with the transformed
+        // masses gives the x force in the real and the y force in the imaginary part of the result
+        int size = gridX * gridY;
+        if (workRe.length != size) {
+            workRe = new double[size];
+            workIm = new double[size];
+            kernelRe = new double[size];
+            kernelIm = new double[size];
+        }
+        if (fftX == null || fftX.length() != gridX) {
+            fftX = new Fft(gridX);
+        }
+        if (fftY == null || fftY.length() != gridY) {
+            fftY = new Fft(gridY);
+        }
+        for (int iy = 0; iy < gridY; iy++) {
+            int oy = iy < gridY / 2 ? iy : iy - gridY;
+            double dy = oy * spacingY;
+            for (int ix = 0; ix < gridX; ix++) {
+                int ox = ix < gridX / 2 ? ix : ix - gridX;
+                double dx = ox * spacingX;
+                int k = iy * gridX + ix;
+                double r = Math.sqrt(dx * dx + dy * dy);
+                // the offset half way across is its own mirror image, it gets no force to keep the kernel odd
+                if (r == 0 || ox == -gridX / 2 || oy == -gridY / 2) {
+                    kernelRe[k] = 0;
+                    kernelIm[k] = 0;
+                    continue;
+                }
+                // the convolution sums mass at y times the kernel at x - y, which points away from the mass
+                double force = -(shortRange ? longRange(r, split) : 1 / (r * r)) / r;
+                kernelRe[k] = force * dx;
+                kernelIm[k] = force * dy;
+            }
+        }
+        System.arraycopy(kernelRe, 0, workRe, 0, size);
+        System.arraycopy(kernelIm, 0, workIm, 0, size);
+        transform(false, gridY);
+        System.arraycopy(workRe, 0, kernelRe, 0, size);
+        System.arraycopy(workIm, 0, kernelIm, 0, size);
+        kernelSpacingX = spacingX;
+        kernelSpacingY = spacingY;
+        kernelPeriodic = periodic;
+    }
+
+    private void deposit() {
+        Arrays.fill(workRe, 0);
+        Arrays.fill(workIm, 0);
+        int n = bodies.size;
+        for (int i = 0; i < n; i++) {
+            double gx = (bodies.x[i] - originX) / spacingX;
+            double gy = (bodies.y[i] - originY) / spacingY;
+            int ix = (int) Math.floor(gx);
+            int iy = (int) Math.floor(gy);
+            double tx = gx - ix;
+            double ty = gy - iy;
+            int ix1 = ix + 1;
+            int iy1 = iy + 1;
+            if (periodic) {
+                // the integrator moves objects before the boundary wraps them, so they can be just outside
+                ix = Math.floorMod(ix, cellsX);
+                iy = Math.floorMod(iy, cellsY);
+                ix1 = ix1 == cellsX ? 0 : Math.floorMod(ix1, cellsX);
+                iy1 = iy1 == cellsY ? 0 : Math.floorMod(iy1, cellsY);
+            }
+            double m = bodies.mass[i];
+            workRe[iy * gridX + ix] += m * (1 - tx) * (1 - ty);
+            workRe[iy * gridX + ix1] += m * tx * (1 - ty);
+            workRe[iy1 * gridX + ix] += m * (1 - tx) * ty;
+            workRe[iy1 * gridX + ix1] += m * tx * ty;
+        }
+    }
+
+    private void transform(boolean inverse, int usedRows) {
+        // 2D transform as row transforms and column transforms, the rows outside usedRows are zero going in
+        // and not needed coming out, so they are skipped
+        this.inverse = inverse;
+        if (!inverse) {
+            ParallelRange.run(pool, usedRows, chunks, rows);
+            ParallelRange.run(pool, gridX, chunks, columns);
+        } else {
+            ParallelRange.run(pool, gridX, chunks, columns);
+            ParallelRange.run(pool, usedRows, chunks, rows);
+        }
+    }
+
+    private void transformRows(int chunk, int from, int to) {
+        for (int row = from; row < to; row++) {
+            fftX.transform(workRe, workIm, row * gridX, inverse);
+        }
+    }
+
+    private void transformColumns(int chunk, int from, int to) {
+        double[] re = columnRe[chunk];
+        double[] im = columnIm[chunk];
+        for (int column = from; column < to; column++) {
+            for (int row = 0; row < gridY; row++) {
+                re[row] = workRe[row * gridX + column];
+                im[row] = workIm[row * gridX + column];
+            }
+            fftY.transform(re, im, 0, inverse);
+            for (int row = 0; row < gridY; row++) {
+                workRe[row * gridX + column] = re[row];
+                workIm[row * gridX + column] = im[row];
+            }
+        }
+    }
+
+    private void buildCellList() {
+        int n = bodies.size;
+        if (periodic) {
+            listX = Math.max(1, (int) (bodies.periodX / cutoff));
+            listY = Math.max(1, (int) (bodies.periodY / cutoff));
+            listSizeX = bodies.periodX / listX;
+            listSizeY = bodies.periodY / listY;
+        } else {
+            listSizeX = cutoff;
+            listSizeY = cutoff;
+            listX = (int) (spacingX * cellsX / cutoff) + 1;
+            listY = (int) (spacingY * cellsY / cutoff) + 1;
+        }
+        int cells = listX * listY;
+        if (listStart.length < cells + 1) {
+            listStart = new int[cells + 1];
+        }
+        if (listOrder.length < n) {
+            listOrder = new int[Math.max(n, listOrder.length * 2)];
+            listCell = new int[listOrder.length];
+        }
+        Arrays.fill(listStart, 0, cells + 1, 0);
+        for (int i = 0; i < n; i++) {
+            int cell = listCellY(bodies.y[i]) * listX + listCellX(bodies.x[i]);
+            listCell[i] = cell;
+            listStart[cell]++;
+        }
+        int sum = 0;
+        for (int c = 0; c < cells; c++) {
+            sum += listStart[c];
+            listStart[c] = sum;
+        }
+        listStart[cells] = n;
+        for (int i = n - 1; i >= 0; i--) {
+            listOrder[--listStart[listCell[i]]] = i;
+        }
+    }
+
+    private int listCellX(double x) {
+        if (periodic) {
+            return Math.floorMod((int) Math.floor(x / listSizeX), listX);
+        }
+        return Math.min((int) ((x - boundsMinX) / listSizeX), listX - 1);
+    }
+
+    private int listCellY(double y) {
+        if (periodic) {
+            return Math.floorMod((int) Math.floor(y / listSizeY), listY);
+        }
+        return Math.min((int) ((y - boundsMinY) / listSizeY), listY - 1);
+    }
+
+    private void applyForces(int chunk, int from, int to) {
+        for (int i = from; i < to; i++) {
+            applyForce(i);
+        }
+    }
+
+    private void applyActiveForces(int chunk, int from, int to) {
+        for (int k = from; k < to; k++) {
+            applyForce(active[k]);
+        }
+    }
+
+    private void applyForce(int i) {
+        // long range part read back from the grid, plus the exact short range part of the close pairs
+        double gx = (bodies.x[i] - originX) / spacingX;
+        double gy = (bodies.y[i] - originY) / spacingY;
+        int ix = (int) Math.floor(gx);
+        int iy = (int) Math.floor(gy);
+        double tx = gx - ix;
+        double ty = gy - iy;
+        int ix1 = ix + 1;
+        int iy1 = iy + 1;
+        if (periodic) {
+            ix = Math.floorMod(ix, cellsX);
+            iy = Math.floorMod(iy, cellsY);
+            ix1 = ix1 == cellsX ? 0 : Math.floorMod(ix1, cellsX);
+            iy1 = iy1 == cellsY ? 0 : Math.floorMod(iy1, cellsY);
+        }
+        double w00 = (1 - tx) * (1 - ty);
+        double w10 = tx * (1 - ty);
+        double w01 = (1 - tx) * ty;
+        double w11 = tx * ty;
+        int k00 = iy * gridX + ix;
+        int k10 = iy * gridX + ix1;
+        int k01 = iy1 * gridX + ix;
+        int k11 = iy1 * gridX + ix1;
+        double ax = w00 * workRe[k00] + w10 * workRe[k10] + w01 * workRe[k01] + w11 * workRe[k11];
+        double ay = w00 * workIm[k00] + w10 * workIm[k10] + w01 * workIm[k01] + w11 * workIm[k11];
+        // the inverse transform is unscaled
+        double scale = G * bodies.mass[i] / ((double) gridX * gridY);
+        double fx = ax * scale;
+        double fy = ay * scale;
+        if (shortRange) {
+            double shortFx = 0;
+            double shortFy = 0;
+            double x = bodies.x[i];
+            double y = bodies.y[i];
+            double cutoff2 = cutoff * cutoff;
+            int cx = listCellX(x);
+            int cy = listCellY(y);
+            // with fewer than three cells across a periodic box the neighbours wrap onto each other
+            int fromX = periodic && listX < 3 ? 0 : -1;
+            int toX = periodic && listX < 3 ? listX - 1 : 1;
+            int fromY = periodic && listY < 3 ? 0 : -1;
+            int toY = periodic && listY < 3 ? listY - 1 : 1;
+            for (int oy = fromY; oy <= toY; oy++) {
+                int ty2 = cy + oy;
+                if (periodic) {
+                    ty2 = Math.floorMod(ty2, listY);
+                } else if (ty2 < 0 || ty2 >= listY) {
+                    continue;
+                }
+                for (int ox = fromX; ox <= toX; ox++) {
+                    int tx2 = cx + ox;
+                    if (periodic) {
+                        tx2 = Math.floorMod(tx2, listX);
+                    } else if (tx2 < 0 || tx2 >= listX) {
+                        continue;
+                    }
+                    int cell = ty2 * listX + tx2;
+                    int end = listStart[cell + 1];
+                    for (int p = listStart[cell]; p < end; p++) {
+                        int j = listOrder[p];
+                        double dx = bodies.x[j] - x;
+                        double dy = bodies.y[j] - y;
+                        if (periodic) {
+                            dx -= bodies.periodX * Math.rint(dx / bodies.periodX);
+                            dy -= bodies.periodY * Math.rint(dy / bodies.periodY);
+                        }
+                        double r2 = dx * dx + dy * dy;
+                        // objects on the same spot pull each other nowhere
+                        if (j == i || r2 >= cutoff2 || r2 == 0) {
+                            continue;
+                        }
+                        double r = Math.sqrt(r2);
+                        double force = bodies.mass[j] * shortRange(r, split) / r;
+                        shortFx += force * dx;
+                        shortFy += force * dy;
+                    }
+                }
+            }
+            fx += G * bodies.mass[i] * shortFx;
+            fy += G * bodies.mass[i] * shortFy;
+        }
+        bodies.fx[i] += fx;
+        bodies.fy[i] += fy;
+    }
+
+    static double longRange(double r, double a) {
+        // smooth part of 1 / r^2 carried by the grid, the force of the potential erf(r / 2a) / r
+        double u = r / (2 * a);
+        return (1 - erfc(u)) / (r * r) - Math.exp(-u * u) / (a * Math.sqrt(Math.PI) * r);
+    }
+
+    static double shortRange(double r, double a) {
+        // the rest of 1 / r^2, falls off like a gaussian beyond a few a
+        double u = r / (2 * a);
+        return erfc(u) / (r * r) + Math.exp(-u * u) / (a * Math.sqrt(Math.PI) * r);
+    }
+
+    static double erfc(double z) {
+        // complementary error function for z >= 0, Chebyshev fit with a relative error below 1.2e-7
+        double t = 1 / (1 + 0.5 * z);
+        return t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.spacesim2d;
+
+public enum Precision {
+    // the floating point width of the pair loop in VectorDirectSumGravity
+
+    // everything in double, what the other solvers use
+    DOUBLE,
+    // positions, masses and pair terms in float, the sums collected in double every few hundred terms;
+    // twice the SIMD lanes at about 1e-5 relative force error; the float copies come on top of the double
+    // store, 12 more bytes per object
+    FLOAT
+}
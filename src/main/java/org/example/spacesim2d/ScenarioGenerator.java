@@ -0,0 +1,230 @@
+package org.example.spacesim2d;
+
+import java.util.Locale;
+import java.util.Random;
+
+public enum ScenarioGenerator {
+    // large test scenes built straight into the body store with Simulation.addBodies, so a million objects
+    // take well under a second; the same count, seed and size always give the same scene
+    // the objects have mass 1 and their velocities put each scene near equilibrium; their radius is
+    // BODY_RADIUS, shrunk in crowded scenes so they overlap no more than a sparse one does
+    // a gas spread evenly over the area, warm enough to start at half the virial equilibrium
+    UNIFORM,
+    // a Plummer sphere projected onto the plane, with velocities from its distribution function
+    PLUMMER,
+    // a disk on circular orbits around a central mass
+    KEPLER_DISK,
+    // two counter-rotating disks with their central masses, falling towards each other off centre
+    COLLIDING_GALAXIES;
+
+    private static final double BODY_RADIUS = 0.5;
+    // at most this share of the densest part of a scene is covered by objects, more and the first
+    // collision pass merges most of a million-object scene into a few thousand
+    private static final double MAX_FILL = 0.05;
+    // the central masses outweigh their disk this many times, so the orbits stay close to Kepler's
+    private static final double CENTRAL_MASS_RATIO = 10;
+    // above this many pairs the potential energy for the virial scaling is estimated from a sample of them
+    private static final int SAMPLED_PAIRS = 1 << 18;
+
+    public static ScenarioGenerator of(String name) {
+        // accepts the lower case names with dashes used on the command line, like kepler-disk
+        return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    public Simulation create(int count, long seed, int width, int height) {
+        Simulation simulation = new Simulation(width, height);
+        generate(simulation, count, seed);
+        return simulation;
+    }
+
+    public void generate(Simulation simulation, int count, long seed) {
+        // adds count objects, central masses included, laid out over the simulation's area
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1: " + count);
+        }
+        Random random = new Random(seed);
+        Bodies bodies = new Bodies(count);
+        double width = simulation.getWidth();
+        double height = simulation.getHeight();
+        double size = Math.min(width, height);
+        double G = simulation.getG();
+        switch (this) {
+            case UNIFORM -> {
+                double radius = radiusFor(count, width * height);
+                for (int i = 0; i < count; i++) {
+                    bodies.add(radius + random.nextDouble() * (width - 2 * radius),
+                            radius + random.nextDouble() * (height - 2 * radius),
+                            random.nextGaussian(), random.nextGaussian(), 1, radius);
+                }
+                toVirialRatio(bodies, 0, count, 0.5, G, random);
+            }
+            case PLUMMER -> {
+                plummer(bodies, count, width / 2, height / 2, size / 12, width, height, random);
+                toVirialRatio(bodies, 0, count, 1, G, random);
+            }
+            case KEPLER_DISK -> disk(bodies, count, width / 2, height / 2, 0.45 * size, 0, 0, 1, G, random);
+            case COLLIDING_GALAXIES -> {
+                // bound but fast enough to pass through each other before merging, offset so tails form
+                if (count < 2) {
+                    throw new IllegalArgumentException("colliding galaxies need at least 2 objects: " + count);
+                }
+                int first = count / 2;
+                double radius = size / 6;
+                double distance = width / 2;
+                double galaxyMass = (1 + CENTRAL_MASS_RATIO) * Math.max(first - 1, 1);
+                double speed = 0.5 * Math.sqrt(2 * G * 2 * galaxyMass / distance);
+                disk(bodies, first, width / 4, height / 2 - radius / 2, radius, speed, 0, 1, G, random);
+                disk(bodies, count - first, 3 * width / 4, height / 2 + radius / 2, radius, -speed, 0, -1, G, random);
+            }
+        }
+        simulation.addBodies("Unnamed", bodies.size, bodies.x, bodies.y, bodies.vx, bodies.vy, bodies.mass, bodies.radius);
+    }
+
+    private static void plummer(Bodies bodies, int count, double cx, double cy, double scale,
+                                double width, double height, Random random) {
+        // positions from the cumulative mass r^3 / (1 + r^2)^(3/2), velocities from the Aarseth, Henon and
+        // Wielen rejection sampling, both in units of the scale radius; only the x and y components are kept
+        // and the velocity scale is set afterwards by the virial ratio
+        // the projected density is highest at the centre, count / (pi scale^2)
+        double radius = radiusFor(count, Math.PI * scale * scale);
+        for (int i = 0; i < count; i++) {
+            double r;
+            double x;
+            double y;
+            do {
+                r = 1 / Math.sqrt(Math.pow(random.nextDouble(), -2.0 / 3) - 1);
+                double[] direction = isotropic(random);
+                x = cx + scale * r * direction[0];
+                y = cy + scale * r * direction[1];
+            } while (x < radius || x > width - radius || y < radius || y > height - radius);
+            double q;
+            do {
+                q = random.nextDouble();
+            } while (0.1 * random.nextDouble() > q * q * Math.pow(1 - q * q, 3.5));
+            double v = q * Math.sqrt(2) * Math.pow(1 + r * r, -0.25);
+            double[] direction = isotropic(random);
+            bodies.add(x, y, v * direction[0], v * direction[1], 1, radius);
+        }
+    }
+
+    private static void disk(Bodies bodies, int count, double cx, double cy, double outer, double vx, double vy,
+                             int spin, double G, Random random) {
+        // a central mass and count - 1 objects spread evenly over the disk area between the inner and outer
+        // radius, each on a circular orbit around the mass inside its radius, the disk's own share included
+        // as if it were all at the centre; spin 1 turns clockwise on screen, -1 counterclockwise
+        int diskCount = count - 1;
+        double diskMass = diskCount;
+        double centralMass = CENTRAL_MASS_RATIO * Math.max(diskMass, 1);
+        double inner = 0.15 * outer;
+        double radius = radiusFor(diskCount, Math.PI * (outer * outer - inner * inner));
+        // the broad phase sizes its cells to the largest object, so the central mass is kept a few disk
+        // objects wide; a third of the inner radius in small scenes, far less in a million-object one
+        double centralRadius = Math.min(inner / 3, 8 * radius);
+        bodies.add(cx, cy, vx, vy, centralMass, centralRadius);
+        for (int i = 0; i < diskCount; i++) {
+            double u = random.nextDouble();
+            double r = Math.sqrt(inner * inner + u * (outer * outer - inner * inner));
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double v = Math.sqrt(G * (centralMass + diskMass * u) / r);
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            bodies.add(cx + r * cos, cy + r * sin, vx - spin * v * sin, vy + spin * v * cos, 1, radius);
+        }
+    }
+
+    private static double radiusFor(int count, double area) {
+        // the radius at which count objects cover MAX_FILL of the area, capped at BODY_RADIUS
+        return Math.min(BODY_RADIUS, Math.sqrt(MAX_FILL * area / (Math.PI * Math.max(count, 1))));
+    }
+
+    private static double[] isotropic(Random random) {
+        // a random direction in space, of which the caller uses x and y
+        double z = 2 * random.nextDouble() - 1;
+        double phi = 2 * Math.PI * random.nextDouble();
+        double s = Math.sqrt(1 - z * z);
+        return new double[] {s * Math.cos(phi), s * Math.sin(phi)};
+    }
+
+    private static void toVirialRatio(Bodies bodies, int from, int to, double ratio, double G, Random random) {
+        // scales the velocities around the group's mean so that 2K = ratio |W|, 1 being equilibrium
+        // the exact W is an O(n^2) sum, for large groups it is the mean over a random sample of pairs
+        double totalMass = 0;
+        double meanVx = 0;
+        double meanVy = 0;
+        for (int i = from; i < to; i++) {
+            totalMass += bodies.mass[i];
+            meanVx += bodies.mass[i] * bodies.vx[i];
+            meanVy += bodies.mass[i] * bodies.vy[i];
+        }
+        meanVx /= totalMass;
+        meanVy /= totalMass;
+        double kinetic = 0;
+        for (int i = from; i < to; i++) {
+            double dvx = bodies.vx[i] - meanVx;
+            double dvy = bodies.vy[i] - meanVy;
+            kinetic += 0.5 * bodies.mass[i] * (dvx * dvx + dvy * dvy);
+        }
+        int n = to - from;
+        double pairs = n * (n - 1.0) / 2;
+        double sum = 0;
+        if (pairs <= SAMPLED_PAIRS) {
+            for (int i = from; i < to; i++) {
+                for (int j = i + 1; j < to; j++) {
+                    sum += inverseDistance(bodies, i, j);
+                }
+            }
+        } else {
+            for (int k = 0; k < SAMPLED_PAIRS; k++) {
+                int i = from + random.nextInt(n);
+                int j = from + random.nextInt(n - 1);
+                sum += inverseDistance(bodies, i, j < i ? j : j + 1);
+            }
+            sum *= pairs / SAMPLED_PAIRS;
+        }
+        double potential = G * sum;
+        if (kinetic == 0 || potential == 0) {
+            return;
+        }
+        double scale = Math.sqrt(ratio * potential / (2 * kinetic));
+        for (int i = from; i < to; i++) {
+            bodies.vx[i] = meanVx + (bodies.vx[i] - meanVx) * scale;
+            bodies.vy[i] = meanVy + (bodies.vy[i] - meanVy) * scale;
+        }
+    }
+
+    private static double inverseDistance(Bodies bodies, int i, int j) {
+        // m_i m_j / r, objects on the same spot count as nothing
+        double distance = Math.hypot(bodies.x[j] - bodies.x[i], bodies.y[j] - bodies.y[i]);
+        return distance > 0 ? bodies.mass[i] * bodies.mass[j] / distance : 0;
+    }
+
+    private static final class Bodies {
+        // the columns handed to Simulation.addBodies
+        final double[] x;
+        final double[] y;
+        final double[] vx;
+        final double[] vy;
+        final double[] mass;
+        final double[] radius;
+        int size;
+
+        Bodies(int capacity) {
+            x = new double[capacity];
+            y = new double[capacity];
+            vx = new double[capacity];
+            vy = new double[capacity];
+            mass = new double[capacity];
+            radius = new double[capacity];
+        }
+
+        void add(double x, double y, double vx, double vy, double mass, double radius) {
+            this.x[size] = x;
+            this.y[size] = y;
+            this.vx[size] = vx;
+            this.vy[size] = vy;
+            this.mass[size] = mass;
+            this.radius[size] = radius;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.spacesim2d;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class ScenarioIO {
+    // plain text scenario format, one object per line:
+    // name,radius,mass,x,y,vx,vy
+    // empty lines and lines starting with # are ignored
+    public static final String HEADER = "# name,radius,mass,x,y,vx,vy";
+
+    public static List<SpaceObject> read(Path path) throws IOException {
+        List<SpaceObject> objects = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if (parts.length != 7) {
+                    throw new IOException(path + ":" + lineNumber + ": expected 7 values but got " + parts.length);
+                }
+                try {
+                    double radius = Double.parseDouble(parts[1]);
+                    double mass = Double.parseDouble(parts[2]);
+                    SpaceObject object = new SpaceObject(parts[0].trim(), radius, 0,
+                            Double.parseDouble(parts[3]), Double.parseDouble(parts[4]),
+                            Double.parseDouble(parts[5]), Double.parseDouble(parts[6]));
+                    object.setMass(mass);
+                    objects.add(object);
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return objects;
+    }
+
+    public static void write(Path path, Simulation simulation) throws IOException {
+        BodyStore bodies = simulation.getBodies();
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (int i = 0; i < bodies.size(); i++) {
+                SpaceObject object = bodies.get(i);
+                writer.write(String.format(Locale.ROOT, "%s,%s,%s,%s,%s,%s,%s",
+                        object.getName().replace(',', ' '), object.getRadius(), object.getMass(),
+                        object.getX(), object.getY(), object.getVx(), object.getVy()));
+                writer.newLine();
+            }
+        }
+    }
+}
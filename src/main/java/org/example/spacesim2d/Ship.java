@@ -1,60 +1,96 @@
 package org.example.spacesim2d;
 
 import javafx.scene.Scene;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.MouseEvent;
-import javafx.scene.paint.Color;
 
 public class Ship extends SpaceObject {
-    private Color color = Color.RED;
-    private Color flame = Color.YELLOW;
-    private double flameScale = 1;
-    private double orientation;  // in radians
-    private double mouseX = 0;
-    private double mouseY = 0;
+    // the mouse target is set through InputEvents on the physics thread, the drawing state is read by the UI thread
+    private volatile double orientation;  // in radians
+    private volatile double mouseX = 0;
+    private volatile double mouseY = 0;
     private double mouseForceScale = 2.0e-2;
-    private int updated = 0;
+    private volatile int updated = 0;
     private int updateRate = 10;
     private double mouseEdgeBuffer = 20;
-    private double acceleration = 0;
+    private volatile double acceleration = 0;
     private double moveNear = 0;
     private double scale = 1;
     private double moveFar;
     private double width;
     private double height;
+    private final double[] mouseForce = new double[2];
 
-    public Ship(double radius, double density, double x, double y, double vx, double vy, double orientation, Scene scene) {
+    public Ship(double radius, double density, double x, double y, double vx, double vy, double orientation, double width, double height) {
         super("player", radius, density, x, y, vx, vy);
         this.orientation = orientation;
-        scene.setOnMouseMoved(this::updateMouse);
-        this.width = scene.getWidth();
-        this.height = scene.getHeight();
+        this.width = width;
+        this.height = height;
         this.moveFar = Math.min(width, height) / 2;
     }
 
+    public Ship(double radius, double density, double x, double y, double vx, double vy, double orientation, Scene scene) {
+        this(radius, density, x, y, vx, vy, orientation, scene.getWidth(), scene.getHeight());
+        scene.setOnMouseMoved(this::updateMouse);
+    }
+
+    double getOrientation() {
+        return orientation;
+    }
+
+    double getAcceleration() {
+        return acceleration;
+    }
+
+    double getMouseX() {
+        return mouseX;
+    }
+
+    double getMouseY() {
+        return mouseY;
+    }
+
+    int getUpdated() {
+        // steps the last mouse move still steers the ship for
+        return updated;
+    }
+
     void updateMouse(MouseEvent e) {
-        mouseX = e.getX();
-        mouseY = e.getY();
+        setMouse(e.getX(), e.getY());
+    }
+
+    void setMouse(double x, double y) {
+        mouseX = x;
+        mouseY = y;
         updated = updateRate;
     }
 
-    private double[] getMouseForce() {
-        SpaceObject mouse = new SpaceObject(mouseX, mouseY);
-        double[] normal = getNormalVectorToObject(mouse);
-        double distance = Math.min(getDistanceToObject(mouse), moveFar);
+    private double[] getMouseForce(double[] out) {
+        double dx = mouseX - getX();
+        double dy = mouseY - getY();
+        double mouseDistance = Math.sqrt(dx * dx + dy * dy);
+        double nx = dx / mouseDistance;
+        double ny = dy / mouseDistance;
+        double distance = Math.min(mouseDistance, moveFar);
         distance = Math.max(distance - moveNear, 0);
         double force = Math.max(Math.log(distance * scale), 0);
 
         // update orientation
-        orientation = Math.atan2(normal[1], normal[0]) + Math.PI / 2;
+        orientation = Math.atan2(ny, nx) + Math.PI / 2;
 
-        return new double[]{normal[0] * force, normal[1] * force};
+        out[0] = nx * force;
+        out[1] = ny * force;
+        return out;
     }
 
     @Override
-    public void accelerate() {
+    public boolean isControlled() {
+        return true;
+    }
+
+    @Override
+    public void applyControls() {
         if (updated > 0 || mouseX > mouseEdgeBuffer && mouseY > mouseEdgeBuffer && mouseX < width - mouseEdgeBuffer && mouseY < height - mouseEdgeBuffer) {
-            double[] mouseForce = getMouseForce();
+            getMouseForce(mouseForce);
             double mouseFx = mouseForce[0];
             double mouseFy = mouseForce[1];
             acceleration = Math.sqrt(mouseFx * mouseFx + mouseFy * mouseFy);
@@ -64,7 +100,6 @@ public class Ship extends SpaceObject {
             acceleration = 0;
         }
         updated--;
-        super.accelerate();
     }
 
     public static void rotatePoints(double[] xPoints, double[] yPoints, double[] origin, double angle) {
@@ -79,24 +114,4 @@ public class Ship extends SpaceObject {
             }
         }
     }
-
-    @Override
-    public void draw(GraphicsContext gc) {
-        double x = getX();
-        double y = getY();
-        double r = getRadius();
-
-        // draw ship as a triangle
-        gc.setFill(color);
-        double[] xPoints = {x + 0, x + 1.5 * r, x - 1.5 * r};
-        double[] yPoints = {y - 2.5 * r, y + r, y + r};
-        rotatePoints(xPoints, yPoints, new double[]{x, y}, orientation);
-        gc.fillPolygon(xPoints, yPoints, 3);
-        // draw flame
-        gc.setFill(flame);
-        xPoints = new double[]{x - 0.5 * r, x + 0.5 * r, x + 0};
-        yPoints = new double[]{y + r, y + r, y + r + Math.random() * (r + r * acceleration * flameScale)};
-        rotatePoints(xPoints, yPoints, new double[]{x, y}, orientation);
-        gc.fillPolygon(xPoints, yPoints, 3);
-    }
 }
@@ -1,20 +1,45 @@
 package org.example.spacesim2d;
 
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 public class Simulation {
-    private List<SpaceObject> objects;
+    private BodyStore bodies = new BodyStore();
+    // objects that need applyControls() every step, like the player ship
+    private List<SpaceObject> controlled = new ArrayList<>();
     private double G = 1.0e-2; // 6.67430e-11;
     private int step;
     private int width;
     private int height;
+    private GravitySolver gravitySolver = new DirectSumGravity();
+    private Integrator integrator = Integrator.EULER;
+    private BlockTimesteps blockTimesteps;
+    private SpatialHash broadPhase = new SpatialHash();
+    private CollisionMode collisionMode = CollisionMode.ELASTIC;
+    // objects absorbed during the current merge pass
+    private boolean[] absorbed = new boolean[0];
+    private long merges;
+    private boolean continuousCollisions;
+    private BoundaryMode boundaryMode = BoundaryMode.REFLECTIVE;
+    // positions at the start of the step, the contacts found along the paths and the objects already in one
+    private double[] startX = new double[0];
+    private double[] startY = new double[0];
+    private double[] contactTime = new double[0];
+    private int[] contactOrder = new int[0];
+    private int[] contactScratch = new int[0];
+    private boolean[] resolved = new boolean[0];
+    // step and store version the broad phase grid was last built for picking queries
+    private int indexedStep = -1;
+    private int indexedVersion = -1;
+    private int[] queryIndices = new int[16];
+    private TrajectoryRecorder recorder;
+    private InputLog inputLog;
+    private Diagnostics diagnostics;
 
     public Simulation(List<SpaceObject> objects, int step, int width, int height) {
-        this.objects = objects;
+        addAll(objects);
         this.step = step;
         this.width = width;
         this.height = height;
@@ -28,86 +53,404 @@ public class Simulation {
         this(new ArrayList<>(), 0, width, height);
     }
 
+    public double getG() {
+        return G;
+    }
+
+    public void setG(double G) {
+        this.G = G;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public GravitySolver getGravitySolver() {
+        return gravitySolver;
+    }
+
+    public void setGravitySolver(GravitySolver gravitySolver) {
+        this.gravitySolver = gravitySolver;
+    }
+
+    public Integrator getIntegrator() {
+        return integrator;
+    }
+
+    public void setIntegrator(Integrator integrator) {
+        this.integrator = integrator;
+    }
+
+    public BlockTimesteps getBlockTimesteps() {
+        if (blockTimesteps == null) {
+            blockTimesteps = new BlockTimesteps();
+        }
+        return blockTimesteps;
+    }
+
+    public CollisionMode getCollisionMode() {
+        return collisionMode;
+    }
+
+    public void setCollisionMode(CollisionMode collisionMode) {
+        this.collisionMode = collisionMode;
+    }
+
+    public boolean isContinuousCollisions() {
+        return continuousCollisions;
+    }
+
+    public void setContinuousCollisions(boolean continuousCollisions) {
+        // sweeps objects along their path over the step, so fast ones cannot pass through each other or the walls
+        // paths are not followed across the seam of a periodic box, there the collisions stay discrete
+        this.continuousCollisions = continuousCollisions;
+    }
+
+    public BoundaryMode getBoundaryMode() {
+        return boundaryMode;
+    }
+
+    public void setBoundaryMode(BoundaryMode boundaryMode) {
+        this.boundaryMode = boundaryMode;
+        boolean periodic = boundaryMode == BoundaryMode.PERIODIC;
+        bodies.periodX = periodic ? width : 0;
+        bodies.periodY = periodic ? height : 0;
+        indexedStep = -1;
+    }
+
+    public long getMerges() {
+        // number of objects absorbed in merges so far
+        return merges;
+    }
+
+    public TrajectoryRecorder getRecorder() {
+        return recorder;
+    }
+
+    public void setRecorder(TrajectoryRecorder recorder) {
+        // receives the positions after every step, null stops recording, closing it is up to the caller
+        this.recorder = recorder;
+    }
+
+    public InputLog getInputLog() {
+        return inputLog;
+    }
+
+    public void setInputLog(InputLog inputLog) {
+        // every event passed to apply is added to the log, null stops logging
+        this.inputLog = inputLog;
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    public void setDiagnostics(Diagnostics diagnostics) {
+        // samples energy, momentum and centre of mass every diagnostics.getEvery() steps, null turns it off
+        this.diagnostics = diagnostics;
+    }
+
+    public SpatialHash getBroadPhase() {
+        return broadPhase;
+    }
+
+    public BodyStore getBodies() {
+        return bodies;
+    }
+
     public void add(SpaceObject object) {
-        objects.add(object);
+        if (object.getStore() == bodies) {
+            return;
+        }
+        bodies.attach(object);
+        if (object.isControlled()) {
+            controlled.add(object);
+        }
+    }
+
+    public void addAll(Collection<? extends SpaceObject> objects) {
+        // like add for every object, with the store grown once up front instead of doubling its way there
+        bodies.ensureCapacity(bodies.size + objects.size());
+        objects.forEach(this::add);
+    }
+
+    public int addBodies(String name, int count, double[] x, double[] y, double[] vx, double[] vy, double[] mass, double[] radius) {
+        // bulk load of count plain objects from columns, copied straight into the store with one handle each,
+        // no object gets a store of its own first; returns the slot of the first one
+        // the broad phase grid follows the store's version, so it is rebuilt once on the next step
+        if (x.length < count || y.length < count || vx.length < count || vy.length < count
+                || mass.length < count || radius.length < count) {
+            throw new IllegalArgumentException("every column needs at least " + count + " values");
+        }
+        int first = bodies.addSlots(count);
+        System.arraycopy(x, 0, bodies.x, first, count);
+        System.arraycopy(y, 0, bodies.y, first, count);
+        System.arraycopy(vx, 0, bodies.vx, first, count);
+        System.arraycopy(vy, 0, bodies.vy, first, count);
+        System.arraycopy(mass, 0, bodies.mass, first, count);
+        System.arraycopy(radius, 0, bodies.radius, first, count);
+        Arrays.fill(bodies.fx, first, first + count, 0);
+        Arrays.fill(bodies.fy, first, first + count, 0);
+        for (int i = first; i < first + count; i++) {
+            new SpaceObject(name, bodies, i);
+        }
+        return first;
+    }
+
+    public Ship getShip() {
+        for (SpaceObject object : controlled) {
+            if (object instanceof Ship ship) {
+                return ship;
+            }
+        }
+        return null;
+    }
+
+    public SpaceObject apply(InputEvent event) {
+        // runs a user input before the next step and logs it, returns the object it added or removed
+        event.setStep(step);
+        if (inputLog != null) {
+            inputLog.add(event);
+        }
+        return event.apply(this);
+    }
+
+    Simulation copy() {
+        // a detached copy of everything a snapshot holds, so it can be written on another thread while this
+        // one runs on; solver, integrator and modes are left at their defaults
+        Simulation copy = new Simulation(new ArrayList<>(), step, width, height);
+        copy.setG(G);
+        int n = bodies.size;
+        BodyStore target = copy.bodies;
+        target.addSlots(n);
+        System.arraycopy(bodies.x, 0, target.x, 0, n);
+        System.arraycopy(bodies.y, 0, target.y, 0, n);
+        System.arraycopy(bodies.vx, 0, target.vx, 0, n);
+        System.arraycopy(bodies.vy, 0, target.vy, 0, n);
+        System.arraycopy(bodies.fx, 0, target.fx, 0, n);
+        System.arraycopy(bodies.fy, 0, target.fy, 0, n);
+        System.arraycopy(bodies.mass, 0, target.mass, 0, n);
+        System.arraycopy(bodies.radius, 0, target.radius, 0, n);
+        for (int i = 0; i < n; i++) {
+            SpaceObject object = bodies.objects[i];
+            if (object instanceof Ship ship) {
+                Ship shipCopy = new Ship(0, 0, 0, 0, 0, 0, ship.getOrientation(), width, height);
+                shipCopy.setName(ship.getName());
+                target.objects[i] = shipCopy;
+                shipCopy.bind(target, i);
+                copy.adopt(shipCopy);
+            } else {
+                new SpaceObject(object.getName(), target, i);
+            }
+        }
+        return copy;
+    }
+
+    void adopt(SpaceObject object) {
+        // for objects bound to a slot of the body store directly instead of through add
+        if (object.isControlled()) {
+            controlled.add(object);
+        }
     }
 
     public void remove(SpaceObject object) {
-        objects.remove(object);
+        if (object.getStore() != bodies) {
+            return;
+        }
+        controlled.remove(object);
+        bodies.remove(object.getIndex());
     }
 
     public void update(double speed) {
-        move(speed);
-        checkCollisions();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+        boolean swept = continuousCollisions && boundaryMode != BoundaryMode.PERIODIC;
+        if (swept) {
+            saveStartPositions();
+        }
+        integrator.step(this, speed);
+        long phase = Metrics.ENABLED ? System.nanoTime() : 0;
+        if (Metrics.ENABLED) {
+            Metrics.record(Metrics.Phase.MOVE, start);
+        }
+        if (boundaryMode == BoundaryMode.PERIODIC) {
+            // wrapped before the collisions, the grid expects every object inside the box
+            wrapPositions();
+        }
+        if (swept) {
+            checkSweptCollisions(speed);
+        } else {
+            checkCollisions();
+        }
+        if (Metrics.ENABLED) {
+            Metrics.record(Metrics.Phase.COLLISIONS, phase);
+            phase = System.nanoTime();
+        }
         checkCollisionsWithWalls();
+        if (Metrics.ENABLED) {
+            Metrics.record(Metrics.Phase.WALLS, phase);
+        }
+        step++;
+        if (diagnostics != null && diagnostics.isDue(step)) {
+            diagnostics.sample(bodies, step, boundaryMode == BoundaryMode.PERIODIC);
+        }
+        if (recorder != null) {
+            recorder.record(bodies, step);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.recordStep(start, allocated);
+        }
     }
 
     public void move(double speed) {
-        for (SpaceObject object : objects) {
-            object.move(speed);
-            object.accelerate();
+        // euler step: move everything, then change the velocities with the forces of the last evaluation
+        drift(speed);
+        kick(speed);
+    }
+
+    public void applyForces() {
+        // recomputes the force on every object for the current positions
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        for (int i = 0; i < bodies.size; i++) {
+            fx[i] = 0;
+            fy[i] = 0;
+        }
+        gravitySolver.applyGravity(bodies, G);
+        // gravity alone, before the controls add their thrust; the last pass of a step is at its end positions
+        if (diagnostics != null && diagnostics.isDue(step + 1)) {
+            diagnostics.captureVirial(bodies, step + 1);
+        }
+        for (int i = 0; i < controlled.size(); i++) {
+            controlled.get(i).applyControls();
+        }
+    }
+
+    void applyForces(int[] active, int activeCount, boolean[] isActive) {
+        // recomputes the force on the listed objects only, isActive is indexed by slot
+        if (activeCount == bodies.size) {
+            // everyone, which the solvers do faster in one pass over the pairs than row by row
+            applyForces();
+            return;
+        }
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        for (int k = 0; k < activeCount; k++) {
+            fx[active[k]] = 0;
+            fy[active[k]] = 0;
+        }
+        gravitySolver.applyGravity(bodies, G, active, activeCount);
+        for (int i = 0; i < controlled.size(); i++) {
+            SpaceObject object = controlled.get(i);
+            if (isActive[object.getIndex()]) {
+                object.applyControls();
+            }
+        }
+    }
+
+    void drift(double dt) {
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] vx = bodies.vx;
+        double[] vy = bodies.vy;
+        for (int i = 0; i < n; i++) {
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+        }
+    }
+
+    void kick(double dt) {
+        int n = bodies.size;
+        double[] vx = bodies.vx;
+        double[] vy = bodies.vy;
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        double[] mass = bodies.mass;
+        for (int i = 0; i < n; i++) {
+            vx[i] += fx[i] / mass[i] * dt;
+            vy[i] += fy[i] / mass[i] * dt;
         }
     }
 
     public void collide(SpaceObject obj1, SpaceObject obj2) {
+        // all math is done on scalars so colliding allocates nothing
         // get object masses
         double m1 = obj1.getMass();
         double m2 = obj2.getMass();
 
-        // get object velocities
-        double[] v1 = {obj1.getVx(), obj1.getVy()};
-        double[] v2 = {obj2.getVx(), obj2.getVy()};
-
-        // get vector from 1st to 2nd object
-        double[] vec = obj1.getVectorToObject(obj2);
-        double dx = vec[0];
-        double dy = vec[1];
-
-        double distance = obj1.getDistanceToObject(obj2);
-
-        double[] normal = obj1.getNormalVectorToObject(obj2);
-        double[] tangent = SpaceObject.getTangent(normal);
+        // get normal vector from 1st to 2nd object, the tangent is (-ny, nx)
+        double dx = obj1.getDxToObject(obj2);
+        double dy = obj1.getDyToObject(obj2);
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double nx = dx / distance;
+        double ny = dy / distance;
 
         // get object velocities expressed as normal and tangent
-        double[] vn1 = SpaceObject.convertVecToNormal(v1, normal);
-        double[] vn2 = SpaceObject.convertVecToNormal(v2, normal);
-        double vn1x = vn1[0];
-        double vn2x = vn2[0];
+        double vx1 = obj1.getVx();
+        double vy1 = obj1.getVy();
+        double vx2 = obj2.getVx();
+        double vy2 = obj2.getVy();
+        double vn1x = vx1 * nx + vy1 * ny;
+        double vn1y = -vx1 * ny + vy1 * nx;
+        double vn2x = vx2 * nx + vy2 * ny;
+        double vn2y = -vx2 * ny + vy2 * nx;
 
         // calculate new normal velocities (only normal part changes for elastic collision)
-        vn1[0] = (vn1x * (m1-m2) + 2 * vn2x * m2) / (m1 + m2);
-        vn2[0] = (vn2x * (m2-m1) + 2 * vn1x * m1) / (m1 + m2);
-
-        // convert normal velocities to original coordinate system
-        double[] final_v1 = SpaceObject.convertNormalToOriginal(vn1, normal);
-        double[] final_v2 = SpaceObject.convertNormalToOriginal(vn2, normal);
+        double newVn1x = (vn1x * (m1-m2) + 2 * vn2x * m2) / (m1 + m2);
+        double newVn2x = (vn2x * (m2-m1) + 2 * vn1x * m1) / (m1 + m2);
 
-        // set new velocities
-        obj1.setVx(final_v1[0]);
-        obj1.setVy(final_v1[1]);
-        obj2.setVx(final_v2[0]);
-        obj2.setVy(final_v2[1]);
+        // convert normal velocities to original coordinate system and set them
+        obj1.setVx(newVn1x * nx - vn1y * ny);
+        obj1.setVy(newVn1x * ny + vn1y * nx);
+        obj2.setVx(newVn2x * nx - vn2y * ny);
+        obj2.setVy(newVn2x * ny + vn2y * nx);
     }
 
     public void checkCollisions() {
-        for (int i = 0; i < objects.size() - 1; i++) {
-            SpaceObject obj1 = objects.get(i);
-            for (int j = i + 1; j < objects.size(); j++) {
-                SpaceObject obj2 = objects.get(j);
-
-                // apply gravity
-                obj1.calculateGravity(obj2, G);
-
-                // check if close by x
-                if (Math.abs(obj1.getX() - obj2.getX()) < obj1.getRadius() + obj2.getRadius()) {
-                    // check if close by y
-                    if (Math.abs(obj1.getY() - obj2.getY()) < obj1.getRadius() + obj2.getRadius()) {
-                        // check if touching using a^2 + b^2 = c^2
-                        double dx = Math.abs(obj1.getX() - obj2.getX());
-                        double dy = Math.abs(obj1.getY() - obj2.getY());
-                        float distance = (float) Math.sqrt(dx * dx + dy * dy);
-                        if (distance < obj1.getRadius() + obj2.getRadius()) {
-                            collide(obj1, obj2);
+        // broad phase, only objects in neighbouring cells can be touching
+        broadPhase.rebuild(bodies);
+        // the walls still move objects after this, so picking has to rebuild
+        indexedStep = -1;
+        int pairCount = broadPhase.findPairs();
+        int[] pairs = broadPhase.getPairs();
+        if (Metrics.ENABLED) {
+            Metrics.addPairTests(pairCount);
+        }
+
+        if (collisionMode == CollisionMode.MERGE) {
+            mergeTouching(pairs, pairCount);
+            return;
+        }
+
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] radius = bodies.radius;
+        for (int k = 0; k < pairCount; k++) {
+            int i = pairs[2 * k];
+            int j = pairs[2 * k + 1];
+            double reach = radius[i] + radius[j];
+            // separations to the nearest image, which is the plain difference unless the box is periodic
+            double dx = Math.abs(bodies.separationX(x[i] - x[j]));
+            double dy = Math.abs(bodies.separationY(y[i] - y[j]));
+            // check if close by x
+            if (dx < reach) {
+                // check if close by y
+                if (dy < reach) {
+                    // check if touching using a^2 + b^2 = c^2
+                    double distance = Math.sqrt(dx * dx + dy * dy);
+                    if (distance < reach) {
+                        collide(bodies.objects[i], bodies.objects[j]);
+                        if (Metrics.ENABLED) {
+                            Metrics.addContacts(1);
                         }
                     }
                 }
@@ -115,47 +458,351 @@ public class Simulation {
         }
     }
 
-    public void checkCollisionsWithWalls() {
-        for (SpaceObject object : objects) {
-            if (object.getX() < object.getRadius() || object.getX() > width - object.getRadius()) {
-                object.setVx(-object.getVx());
-                // move object back to avoid sticking to the wall
-                object.setX(object.getX() + object.getVx());
+    private void mergeTouching(int[] pairs, int pairCount) {
+        // merges every touching pair, an object absorbed earlier in the pass is skipped for the rest of it,
+        // the absorbed objects are removed afterwards from the highest index down, so every swap-remove
+        // moves an object that is still alive into the freed slot
+        int n = bodies.size;
+        if (absorbed.length < n) {
+            absorbed = new boolean[Math.max(n, absorbed.length * 2)];
+        }
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] radius = bodies.radius;
+        int absorbedCount = 0;
+        for (int k = 0; k < pairCount; k++) {
+            int i = pairs[2 * k];
+            int j = pairs[2 * k + 1];
+            if (absorbed[i] || absorbed[j]) {
+                continue;
             }
-            if (object.getY() < object.getRadius() || object.getY() > height - object.getRadius()) {
-                object.setVy(-object.getVy());
-                // move object back to avoid sticking to the wall
-                object.setY(object.getY() + object.getVy());
+            double dx = bodies.separationX(x[i] - x[j]);
+            double dy = bodies.separationY(y[i] - y[j]);
+            double reach = radius[i] + radius[j];
+            if (dx * dx + dy * dy < reach * reach) {
+                int survivor = survivor(i, j);
+                int other = survivor == i ? j : i;
+                merge(survivor, other);
+                absorbed[other] = true;
+                absorbedCount++;
             }
         }
+        if (Metrics.ENABLED) {
+            Metrics.addContacts(absorbedCount);
+        }
+        removeAbsorbed(n, absorbedCount);
     }
 
-    public SpaceObject getObjectAt(double x, double y) {
-        SpaceObject temp = new SpaceObject(x, y);
-        for (SpaceObject object : objects) {
-            double distance = object.getDistanceToObject(temp);
-            if (distance < object.getRadius()) {
-                return object;
+    private void removeAbsorbed(int n, int absorbedCount) {
+        if (absorbedCount == 0) {
+            return;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            if (absorbed[i]) {
+                absorbed[i] = false;
+                SpaceObject object = bodies.objects[i];
+                if (object.isControlled()) {
+                    controlled.remove(object);
+                }
+                bodies.discard(i);
             }
         }
-        return null;
+        merges += absorbedCount;
     }
 
-    public SpaceObject getObjectClosestTo(double x, double y) {
-        SpaceObject temp = new SpaceObject(x, y);
-        SpaceObject closest = null;
-        double minDistance = Double.MAX_VALUE;
-        for (SpaceObject object : objects) {
-            double distance = object.getDistanceToObject(temp);
-            if (distance - object.getRadius() < minDistance) {
-                minDistance = distance - object.getRadius();
-                closest = object;
+    private int survivor(int i, int j) {
+        // the controlled object keeps its identity, otherwise the heavier one, the lower index on a tie
+        boolean ci = bodies.objects[i].isControlled();
+        boolean cj = bodies.objects[j].isControlled();
+        if (ci != cj) {
+            return ci ? i : j;
+        }
+        return bodies.mass[j] > bodies.mass[i] ? j : i;
+    }
+
+    private void merge(int into, int from) {
+        // perfectly inelastic: centre of mass position, momentum conserving velocity, summed forces
+        // the merged object has the combined density (total mass over total area), so its radius
+        // is the one whose area is the sum of both areas
+        double[] mass = bodies.mass;
+        double m1 = mass[into];
+        double m2 = mass[from];
+        double m = m1 + m2;
+        if (m > 0) {
+            // the absorbed object is taken at its nearest image, the boundary wraps the result afterwards
+            bodies.x[into] += bodies.separationX(bodies.x[from] - bodies.x[into]) * m2 / m;
+            bodies.y[into] += bodies.separationY(bodies.y[from] - bodies.y[into]) * m2 / m;
+            bodies.vx[into] = (bodies.vx[into] * m1 + bodies.vx[from] * m2) / m;
+            bodies.vy[into] = (bodies.vy[into] * m1 + bodies.vy[from] * m2) / m;
+        }
+        bodies.fx[into] += bodies.fx[from];
+        bodies.fy[into] += bodies.fy[from];
+        double r1 = bodies.radius[into];
+        double r2 = bodies.radius[from];
+        mass[into] = m;
+        bodies.radius[into] = Math.sqrt(r1 * r1 + r2 * r2);
+    }
+
+    private void saveStartPositions() {
+        int n = bodies.size;
+        if (startX.length < n) {
+            startX = new double[Math.max(n, startX.length * 2)];
+            startY = new double[startX.length];
+        }
+        System.arraycopy(bodies.x, 0, startX, 0, n);
+        System.arraycopy(bodies.y, 0, startY, 0, n);
+    }
+
+    void checkSweptCollisions(double dt) {
+        // continuous collisions: every object is taken to move in a straight line from its start to its end
+        // position, the time of first contact is solved for each pair whose swept boxes overlap and the contacts
+        // are resolved earliest first: both objects are put back where they touched, collide or merge there
+        // and move on with their new velocity for the rest of the step
+        // an object takes part in one contact per step, a second one along its path is left to the next step
+        indexedStep = -1;
+        int n = bodies.size;
+        int pairCount = broadPhase.findSweptPairs(bodies, startX, startY);
+        int[] pairs = broadPhase.getPairs();
+        if (Metrics.ENABLED) {
+            Metrics.addPairTests(pairCount);
+        }
+        if (contactTime.length < pairCount) {
+            contactTime = new double[Math.max(pairCount, contactTime.length * 2)];
+            contactOrder = new int[contactTime.length];
+            contactScratch = new int[contactTime.length];
+        }
+        int contactCount = 0;
+        for (int k = 0; k < pairCount; k++) {
+            double t = timeOfImpact(pairs[2 * k], pairs[2 * k + 1]);
+            if (t >= 0) {
+                contactTime[k] = t;
+                contactOrder[contactCount++] = k;
+            }
+        }
+        if (contactCount == 0) {
+            return;
+        }
+        sortContacts(contactCount);
+
+        if (resolved.length < n) {
+            resolved = new boolean[Math.max(n, resolved.length * 2)];
+        }
+        if (absorbed.length < n) {
+            absorbed = new boolean[Math.max(n, absorbed.length * 2)];
+        }
+        int absorbedCount = 0;
+        for (int c = 0; c < contactCount; c++) {
+            int k = contactOrder[c];
+            int i = pairs[2 * k];
+            int j = pairs[2 * k + 1];
+            if (resolved[i] || resolved[j]) {
+                continue;
+            }
+            double t = contactTime[k];
+            double remaining = (1 - t) * dt;
+            moveAlongPath(i, t);
+            moveAlongPath(j, t);
+            if (collisionMode == CollisionMode.MERGE) {
+                int survivor = survivor(i, j);
+                int other = survivor == i ? j : i;
+                merge(survivor, other);
+                absorbed[other] = true;
+                absorbedCount++;
+                bodies.x[survivor] += bodies.vx[survivor] * remaining;
+                bodies.y[survivor] += bodies.vy[survivor] * remaining;
+            } else {
+                collide(bodies.objects[i], bodies.objects[j]);
+                bodies.x[i] += bodies.vx[i] * remaining;
+                bodies.y[i] += bodies.vy[i] * remaining;
+                bodies.x[j] += bodies.vx[j] * remaining;
+                bodies.y[j] += bodies.vy[j] * remaining;
+            }
+            resolved[i] = true;
+            resolved[j] = true;
+            if (Metrics.ENABLED) {
+                Metrics.addContacts(1);
+            }
+        }
+        Arrays.fill(resolved, 0, n, false);
+        if (collisionMode == CollisionMode.MERGE) {
+            removeAbsorbed(n, absorbedCount);
+        }
+    }
+
+    private void sortContacts(int count) {
+        // bottom up merge sort of the contacts by their exact time of impact; it is stable and the pairs go in
+        // in index order, so the pair index breaks ties and the order never depends on how the sort splits
+        int[] from = contactOrder;
+        int[] to = contactScratch;
+        for (int width = 1; width < count; width *= 2) {
+            for (int start = 0; start < count; start += 2 * width) {
+                int middle = Math.min(start + width, count);
+                int end = Math.min(start + 2 * width, count);
+                int a = start;
+                int b = middle;
+                for (int c = start; c < end; c++) {
+                    if (a < middle && (b == end || Double.compare(contactTime[from[a]], contactTime[from[b]]) <= 0)) {
+                        to[c] = from[a++];
+                    } else {
+                        to[c] = from[b++];
+                    }
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != contactOrder) {
+            System.arraycopy(from, 0, contactOrder, 0, count);
+        }
+    }
+
+    private double timeOfImpact(int i, int j) {
+        // fraction of the step at which the two paths first bring the objects into contact, -1 if they do not
+        // solves |p + d t| = r1 + r2 for the relative start position p and relative displacement d
+        double px = startX[j] - startX[i];
+        double py = startY[j] - startY[i];
+        double dx = bodies.x[j] - startX[j] - (bodies.x[i] - startX[i]);
+        double dy = bodies.y[j] - startY[j] - (bodies.y[i] - startY[i]);
+        double reach = bodies.radius[i] + bodies.radius[j];
+        double halfB = px * dx + py * dy;
+        if (halfB >= 0) {
+            // not approaching each other, this also lets overlapping objects separate
+            return -1;
+        }
+        double c = px * px + py * py - reach * reach;
+        if (c <= 0) {
+            return 0;
+        }
+        double a = dx * dx + dy * dy;
+        double discriminant = halfB * halfB - a * c;
+        if (discriminant < 0) {
+            return -1;
+        }
+        double t = (-halfB - Math.sqrt(discriminant)) / a;
+        return t <= 1 ? t : -1;
+    }
+
+    private void moveAlongPath(int i, double t) {
+        bodies.x[i] = startX[i] + (bodies.x[i] - startX[i]) * t;
+        bodies.y[i] = startY[i] + (bodies.y[i] - startY[i]) * t;
+    }
+
+    public void checkCollisionsWithWalls() {
+        // applies the boundary mode at the end of a step, open space has nothing to apply
+        switch (boundaryMode) {
+            case REFLECTIVE -> reflectAtWalls();
+            case PERIODIC -> wrapPositions();
+            case OPEN -> {
+            }
+        }
+    }
+
+    private void reflectAtWalls() {
+        // the part of the path behind a wall is mirrored back in front of it, which is where a straight path
+        // bouncing at the time of impact ends up, and the velocity is turned away from the wall
+        // flipping the velocity and moving by it, as before, left objects outside that flipped back and forth
+        // and stuck to the wall, and the extra move added energy
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] vx = bodies.vx;
+        double[] vy = bodies.vy;
+        double[] radius = bodies.radius;
+        for (int i = 0; i < n; i++) {
+            double r = radius[i];
+            if (x[i] < r) {
+                x[i] = 2 * r - x[i];
+                vx[i] = Math.abs(vx[i]);
+            } else if (x[i] > width - r) {
+                x[i] = 2 * (width - r) - x[i];
+                vx[i] = -Math.abs(vx[i]);
+            }
+            if (y[i] < r) {
+                y[i] = 2 * r - y[i];
+                vy[i] = Math.abs(vy[i]);
+            } else if (y[i] > height - r) {
+                y[i] = 2 * (height - r) - y[i];
+                vy[i] = -Math.abs(vy[i]);
+            }
+            // more than one bounce within a step, keep it inside at least
+            if (width > 2 * r) {
+                x[i] = Math.min(Math.max(x[i], r), width - r);
             }
+            if (height > 2 * r) {
+                y[i] = Math.min(Math.max(y[i], r), height - r);
+            }
+        }
+    }
+
+    private void wrapPositions() {
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        for (int i = 0; i < n; i++) {
+            x[i] = wrap(x[i], width);
+            y[i] = wrap(y[i], height);
+        }
+    }
+
+    private static double wrap(double value, double period) {
+        if (value >= 0 && value < period) {
+            return value;
         }
-        return closest;
+        double wrapped = value - period * Math.floor(value / period);
+        // rounding can land exactly on the upper edge
+        return wrapped < period ? wrapped : 0;
+    }
+
+    public SpaceObject getObjectAt(double x, double y) {
+        ensureIndex();
+        int index = broadPhase.findAt(bodies, x, y);
+        return index == -1 ? null : bodies.objects[index];
     }
 
-    public void drawSimulationObjects(GraphicsContext gc) {
-        objects.forEach(object -> object.draw(gc));
+    public SpaceObject getObjectClosestTo(double x, double y) {
+        ensureIndex();
+        int found = broadPhase.findNearest(bodies, x, y, 1, queryIndices);
+        return found == 0 ? null : bodies.objects[queryIndices[0]];
+    }
+
+    public int getObjectsInRange(double x, double y, double range, SpaceObject[] out) {
+        // objects reaching into the circle around the point, fills out up to its length
+        // and returns the total number found, so an empty array just counts them
+        ensureIndex();
+        ensureQueryCapacity(out.length);
+        int found = broadPhase.findInRange(bodies, x, y, range, queryIndices);
+        int stored = Math.min(found, out.length);
+        for (int k = 0; k < stored; k++) {
+            out[k] = bodies.objects[queryIndices[k]];
+        }
+        return found;
+    }
+
+    public int getNearestObjects(double x, double y, SpaceObject[] out) {
+        // the out.length objects with the closest surface to the point, closest first
+        ensureIndex();
+        ensureQueryCapacity(out.length);
+        int found = broadPhase.findNearest(bodies, x, y, out.length, queryIndices);
+        for (int k = 0; k < found; k++) {
+            out[k] = bodies.objects[queryIndices[k]];
+        }
+        return found;
+    }
+
+    private void ensureIndex() {
+        // the grid is rebuilt at most once per step, or when objects were added or removed since
+        // positions changed through the setters in between are only seen after the next step
+        if (indexedStep != step || indexedVersion != bodies.version) {
+            broadPhase.rebuild(bodies);
+            indexedStep = step;
+            indexedVersion = bodies.version;
+        }
+    }
+
+    private void ensureQueryCapacity(int capacity) {
+        if (queryIndices.length < capacity) {
+            queryIndices = new int[Math.max(capacity, queryIndices.length * 2)];
+        }
     }
 }
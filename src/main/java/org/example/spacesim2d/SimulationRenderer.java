@@ -0,0 +1,303 @@
+package org.example.spacesim2d;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+public class SimulationRenderer {
+    // draws a simulation on a JavaFX canvas, the simulation itself knows nothing about JavaFX
+    // every frame the objects are culled against the canvas, sorted by color and drawn one color at a time,
+    // so the fill only changes once per color instead of once per object
+    // colors are cached per slot and only recomputed when the density in that slot changes
+    // objects smaller than a pixel are drawn as single pixel points, small ones as squares
+    private static final double POINT_RADIUS = 0.5;
+    private static final double SQUARE_RADIUS = 1.5;
+    // above this many distinct colors the palette starts over, so it cannot grow without bound
+    private static final int MAX_COLORS = 4096;
+    private static final Color SHIP_COLOR = Color.RED;
+    private static final Color FLAME_COLOR = Color.YELLOW;
+    private static final double FLAME_SCALE = 1;
+    private static final Color OVERLAY_BACKGROUND = Color.rgb(0, 0, 0, 0.7);
+    private static final Color OVERLAY_TEXT = Color.LIGHTGREEN;
+    private static final double OVERLAY_LINE_HEIGHT = 14;
+
+    // palette of the colors seen so far, an open addressing table from packed rgb to palette index
+    private Color[] colors = new Color[64];
+    private int[] colorRgb = new int[64];
+    private int colorCount;
+    private int[] table = new int[128];
+
+    // per slot color cache
+    private double[] slotDensity = new double[0];
+    private int[] slotColor = new int[0];
+
+    // visible objects of the current frame, grouped by color
+    private double[] drawX = new double[0];
+    private double[] drawY = new double[0];
+    private double[] drawRadius = new double[0];
+    private int[] visible = new int[0];
+    private int[] order = new int[0];
+    private int[] groupStart = new int[65];
+
+    private long lastDrawNanos;
+    private double averageDrawNanos;
+    private int drawnCount;
+    private int pointCount;
+    private int culledCount;
+    // the flame flickers from a seeded generator, so two renderers of the same run draw the same frames
+    private final Random flicker = new Random(0x5EED);
+
+    public SimulationRenderer() {
+        Arrays.fill(table, -1);
+    }
+
+    public long getLastDrawNanos() {
+        return lastDrawNanos;
+    }
+
+    public double getAverageDrawNanos() {
+        // exponential moving average over roughly the last 30 frames
+        return averageDrawNanos;
+    }
+
+    public int getDrawnCount() {
+        return drawnCount;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    public void drawSnapshot(GraphicsContext gc, SimulationSnapshot snapshot, double alpha) {
+        // draws the snapshot interpolated between its previous and current positions, alpha in [0, 1]
+        long start = System.nanoTime();
+        int n = snapshot.size;
+        startFrame(n);
+        for (int i = 0; i < n; i++) {
+            drawX[i] = snapshot.prevX[i] + (snapshot.x[i] - snapshot.prevX[i]) * alpha;
+            drawY[i] = snapshot.prevY[i] + (snapshot.y[i] - snapshot.prevY[i]) * alpha;
+            updateColor(i, snapshot.density[i]);
+        }
+        System.arraycopy(snapshot.radius, 0, drawRadius, 0, n);
+        render(gc, n, snapshot.objects);
+        finishFrame(start);
+    }
+
+    public void draw(GraphicsContext gc, SpaceObject object) {
+        if (object instanceof Ship ship) {
+            drawShip(gc, ship, ship.getX(), ship.getY(), ship.getRadius());
+            return;
+        }
+        // draw the object on the canvas
+        gc.setFill(getColor(object.getDensity()));
+        double radius = object.getRadius();
+        gc.fillOval(object.getX() - radius, object.getY() - radius, 2 * radius, 2 * radius);
+    }
+
+    public static Color getColor(double density) {
+        // the color is based on the density of the object
+        // density of around 0 - 10 goes from dark green to fully green
+        // density of around 10 - 100 goes from fully green to white
+        return Color.rgb(red(density), green(density), blue(density));
+    }
+
+    private static int red(double density) {
+        return (int) Math.min(Math.max(60 * Math.log(density - 9), 0), 255);
+    }
+
+    private static int green(double density) {
+        return (int) Math.min(55 + 20 * density, 255);
+    }
+
+    private static int blue(double density) {
+        return (int) Math.min(Math.max(60 * Math.log(density - 7), 10), 255);
+    }
+
+    private void render(GraphicsContext gc, int n, SpaceObject[] objects) {
+        double width = gc.getCanvas().getWidth();
+        double height = gc.getCanvas().getHeight();
+
+        // cull and count the visible objects per color, ships are drawn on their own afterwards
+        Arrays.fill(groupStart, 0, colorCount + 1, 0);
+        int visibleCount = 0;
+        culledCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isOffScreen(i, width, height)) {
+                culledCount++;
+                continue;
+            }
+            if (!(objects[i] instanceof Ship)) {
+                visible[visibleCount++] = i;
+                groupStart[slotColor[i]]++;
+            }
+        }
+
+        // counting sort of the visible objects by color
+        int sum = 0;
+        for (int c = 0; c < colorCount; c++) {
+            sum += groupStart[c];
+            groupStart[c] = sum;
+        }
+        groupStart[colorCount] = visibleCount;
+        for (int k = visibleCount - 1; k >= 0; k--) {
+            int i = visible[k];
+            order[--groupStart[slotColor[i]]] = i;
+        }
+
+        pointCount = 0;
+        for (int c = 0; c < colorCount; c++) {
+            int from = groupStart[c];
+            int to = groupStart[c + 1];
+            if (from == to) {
+                continue;
+            }
+            gc.setFill(colors[c]);
+            for (int k = from; k < to; k++) {
+                int i = order[k];
+                double x = drawX[i];
+                double y = drawY[i];
+                double r = drawRadius[i];
+                if (r < POINT_RADIUS) {
+                    gc.fillRect(Math.floor(x), Math.floor(y), 1, 1);
+                    pointCount++;
+                } else if (r < SQUARE_RADIUS) {
+                    gc.fillRect(x - r, y - r, 2 * r, 2 * r);
+                } else {
+                    gc.fillOval(x - r, y - r, 2 * r, 2 * r);
+                }
+            }
+        }
+        drawnCount = visibleCount;
+
+        for (int i = 0; i < n; i++) {
+            if (objects[i] instanceof Ship ship && !isOffScreen(i, width, height)) {
+                drawShip(gc, ship, drawX[i], drawY[i], drawRadius[i]);
+                drawnCount++;
+            }
+        }
+    }
+
+    public void drawShip(GraphicsContext gc, Ship ship, double x, double y, double r) {
+        double orientation = ship.getOrientation();
+        // draw ship as a triangle
+        gc.setFill(SHIP_COLOR);
+        double[] xPoints = {x + 0, x + 1.5 * r, x - 1.5 * r};
+        double[] yPoints = {y - 2.5 * r, y + r, y + r};
+        Ship.rotatePoints(xPoints, yPoints, new double[]{x, y}, orientation);
+        gc.fillPolygon(xPoints, yPoints, 3);
+        // draw flame
+        gc.setFill(FLAME_COLOR);
+        xPoints = new double[]{x - 0.5 * r, x + 0.5 * r, x + 0};
+        yPoints = new double[]{y + r, y + r, y + r + flicker.nextDouble() * (r + r * ship.getAcceleration() * FLAME_SCALE)};
+        Ship.rotatePoints(xPoints, yPoints, new double[]{x, y}, orientation);
+        gc.fillPolygon(xPoints, yPoints, 3);
+    }
+
+    public void drawOverlay(GraphicsContext gc) {
+        // frame statistics in the top left corner, with the phase timings when metrics are enabled
+        // building the text allocates, which only matters while the overlay is shown
+        String text = String.format(Locale.ROOT, "draw %.2f ms (avg %.2f ms), %d drawn, %d as points, %d culled%n",
+                lastDrawNanos / 1e6, averageDrawNanos / 1e6, drawnCount, pointCount, culledCount)
+                + (Metrics.ENABLED ? Metrics.summary() : "start with -Dspacesim2d.metrics=true for phase timings\n");
+        String[] lines = text.split("\\R");
+        gc.setFill(OVERLAY_BACKGROUND);
+        gc.fillRect(0, 0, 620, OVERLAY_LINE_HEIGHT * lines.length + 8);
+        gc.setFill(OVERLAY_TEXT);
+        gc.setFont(Font.font("Monospaced", 11));
+        for (int k = 0; k < lines.length; k++) {
+            gc.fillText(lines[k], 6, OVERLAY_LINE_HEIGHT * (k + 1));
+        }
+    }
+
+    private boolean isOffScreen(int i, double width, double height) {
+        double r = drawRadius[i];
+        return drawX[i] + r < 0 || drawX[i] - r > width || drawY[i] + r < 0 || drawY[i] - r > height;
+    }
+
+    private void finishFrame(long start) {
+        if (Metrics.ENABLED) {
+            Metrics.record(Metrics.Phase.DRAW, start);
+        }
+        lastDrawNanos = System.nanoTime() - start;
+        averageDrawNanos = averageDrawNanos == 0 ? lastDrawNanos : averageDrawNanos + (lastDrawNanos - averageDrawNanos) / 30;
+    }
+
+    private void updateColor(int slot, double density) {
+        // the color only depends on the density, so an unchanged density keeps its color
+        if (slotDensity[slot] == density && slotColor[slot] != -1) {
+            return;
+        }
+        slotDensity[slot] = density;
+        slotColor[slot] = colorIndex(density);
+    }
+
+    private int colorIndex(double density) {
+        int rgb = red(density) << 16 | green(density) << 8 | blue(density);
+        int mask = table.length - 1;
+        int slot = (rgb * 0x9E3779B1 >>> 16) & mask;
+        while (table[slot] != -1) {
+            if (colorRgb[table[slot]] == rgb) {
+                return table[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int index = colorCount++;
+        if (index == colors.length) {
+            colors = Arrays.copyOf(colors, index * 2);
+            colorRgb = Arrays.copyOf(colorRgb, index * 2);
+        }
+        colors[index] = Color.rgb(rgb >> 16, rgb >> 8 & 0xFF, rgb & 0xFF);
+        colorRgb[index] = rgb;
+        table[slot] = index;
+        if (2 * colorCount > table.length) {
+            rehash(table.length * 2);
+        }
+        if (groupStart.length < colorCount + 1) {
+            groupStart = new int[Math.max(colorCount + 1, groupStart.length * 2)];
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, -1);
+        int mask = capacity - 1;
+        for (int index = 0; index < colorCount; index++) {
+            int slot = (colorRgb[index] * 0x9E3779B1 >>> 16) & mask;
+            while (table[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index;
+        }
+    }
+
+    private void startFrame(int n) {
+        if (colorCount >= MAX_COLORS) {
+            // start the palette over, every slot has to look its color up again
+            colorCount = 0;
+            Arrays.fill(table, -1);
+            Arrays.fill(slotColor, -1);
+        }
+        if (drawX.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, drawX.length * 2);
+        drawX = new double[capacity];
+        drawY = new double[capacity];
+        drawRadius = new double[capacity];
+        visible = new int[capacity];
+        order = new int[capacity];
+        int old = slotColor.length;
+        slotDensity = Arrays.copyOf(slotDensity, capacity);
+        slotColor = Arrays.copyOf(slotColor, capacity);
+        Arrays.fill(slotColor, old, capacity, -1);
+    }
+}
@@ -0,0 +1,201 @@
+package org.example.spacesim2d;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class SimulationScheduler {
+    // runs the simulation on its own thread with a fixed timestep
+    // real time is collected in an accumulator and paid out in fixed steps, at most maxCatchUpSteps at a time,
+    // so a slow step makes the simulation fall behind instead of spiralling into ever longer catch ups
+    // finished states go to the render thread through a lock-free triple buffer of snapshots,
+    // and changes from the UI and the services are queued as commands that run on the physics thread between
+    // steps, through a lock-free queue that any number of threads can submit to
+    // a command that throws is reported and skipped; a step that throws leaves the simulation half updated,
+    // so it is reported and the scheduler stops, keeping the last published snapshot on screen
+    private static final int FRESH = 4;
+
+    private final Simulation simulation;
+    private final CommandQueue<Consumer<Simulation>> commands = new CommandQueue<>();
+    private final SimulationSnapshot[] snapshots = {new SimulationSnapshot(), new SimulationSnapshot(), new SimulationSnapshot()};
+    // index of the shared snapshot, with the FRESH bit set when the render thread has not taken it yet
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // only used by the physics thread
+    private int front = 2;  // only used by the render thread
+    private final long stepNanos;
+    private volatile double speed = 1;
+    private int maxCatchUpSteps = 5;
+    private volatile boolean running;
+    private volatile Consumer<Throwable> failureHandler = SimulationScheduler::printFailure;
+    private Thread thread;
+
+    public SimulationScheduler(Simulation simulation, double stepsPerSecond) {
+        this.simulation = simulation;
+        this.stepNanos = (long) (TimeUnit.SECONDS.toNanos(1) / stepsPerSecond);
+    }
+
+    public Simulation getSimulation() {
+        // only safe to use from submitted commands or while the scheduler is stopped
+        return simulation;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public int getMaxCatchUpSteps() {
+        return maxCatchUpSteps;
+    }
+
+    public void setMaxCatchUpSteps(int maxCatchUpSteps) {
+        this.maxCatchUpSteps = Math.max(maxCatchUpSteps, 1);
+    }
+
+    public boolean isRunning() {
+        // false once stopped, including after a failed step
+        return running;
+    }
+
+    public void setFailureHandler(Consumer<Throwable> failureHandler) {
+        // called on the physics thread with every exception a command or a step throws; after a failed step
+        // isRunning is already false when the handler runs
+        this.failureHandler = failureHandler;
+    }
+
+    public void submit(Consumer<Simulation> command) {
+        // runs the command on the physics thread before the next step
+        commands.offer(command);
+    }
+
+    public <T> CompletableFuture<T> call(Function<Simulation, T> command) {
+        // like submit, with the command's result or exception handed back to the calling thread
+        // the future only completes while the scheduler runs
+        CompletableFuture<T> result = new CompletableFuture<>();
+        commands.offer(simulation -> {
+            try {
+                result.complete(command.apply(simulation));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "physics");
+        thread.setDaemon(true);
+        // errors the loop does not catch still stop the scheduler and reach the handler
+        thread.setUncaughtExceptionHandler((failed, e) -> fail(e));
+        thread.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        // also joins a thread that already stopped after a failed step
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        thread = null;
+    }
+
+    public SimulationSnapshot acquireSnapshot() {
+        // render thread only, returns the newest published snapshot, which stays valid until the next call
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & ~FRESH;
+        }
+        return snapshots[front];
+    }
+
+    public double getInterpolationAlpha(SimulationSnapshot snapshot, long nowNanos) {
+        // how far the render time is between the snapshot's previous and current state, in [0, 1]
+        double alpha = (double) (nowNanos - snapshot.getTimeNanos()) / stepNanos;
+        return Math.min(Math.max(alpha, 0), 1);
+    }
+
+    private void run() {
+        applyCommands();
+        publish(System.nanoTime());
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+
+            int steps = 0;
+            while (accumulator >= stepNanos && steps < maxCatchUpSteps) {
+                applyCommands();
+                accumulator -= stepNanos;
+                steps++;
+                try {
+                    if (accumulator < stepNanos || steps == maxCatchUpSteps) {
+                        // last step of this round, keep its starting positions for interpolation
+                        snapshots[back].capturePrevious(simulation.getBodies());
+                    }
+                    simulation.update(speed);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+            }
+            if (accumulator >= stepNanos) {
+                // too far behind, drop the backlog instead of trying to catch up
+                accumulator = 0;
+            }
+            if (steps > 0) {
+                publish(System.nanoTime() - accumulator);
+            } else {
+                LockSupport.parkNanos(stepNanos - accumulator);
+            }
+        }
+    }
+
+    private void applyCommands() {
+        Consumer<Simulation> command;
+        while ((command = commands.poll()) != null) {
+            try {
+                command.accept(simulation);
+            } catch (RuntimeException e) {
+                report(e);
+            }
+        }
+    }
+
+    private void fail(Throwable e) {
+        running = false;
+        report(e);
+    }
+
+    private void report(Throwable e) {
+        try {
+            failureHandler.accept(e);
+        } catch (RuntimeException handlerFailure) {
+            // a broken handler must not take the physics thread down with it
+            e.addSuppressed(handlerFailure);
+            printFailure(e);
+        }
+    }
+
+    private static void printFailure(Throwable e) {
+        System.err.print("physics thread: ");
+        e.printStackTrace();
+    }
+
+    private void publish(long timeNanos) {
+        snapshots[back].capture(simulation.getBodies(), simulation.getStep(), timeNanos);
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.spacesim2d;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+public class SimulationServices implements AutoCloseable {
+    // the background work of the interactive simulation, autosave, trajectory recording, metrics and
+    // diagnostics export,
+    // each on a virtual thread of its own, so neither the FX thread nor the physics thread waits for the disk
+    // the physics thread only does what has to happen between steps: copying the state for an autosave
+    // and handing positions to the recorder; everything else happens on the service threads
+    // files are written next to their target and moved over it, so a crash never leaves half a file behind
+    // a failing service reports on stderr and keeps trying at its next interval, except the recorder, whose
+    // writer cannot pick up again after a failure: it reports once and drops the frames after it
+    private final SimulationScheduler scheduler;
+    private final List<Thread> threads = new ArrayList<>();
+    private TrajectoryRecorder recorder;
+    private Path autosave;
+    private Path diagnostics;
+    private boolean closed;
+
+    public SimulationServices(SimulationScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void startAutosave(Path path, long intervalMillis) {
+        // writes a snapshot every interval, and a last one on close
+        checkInterval(intervalMillis);
+        autosave = path;
+        start("autosave", () -> {
+            while (true) {
+                Thread.sleep(intervalMillis);
+                Simulation copy;
+                try {
+                    copy = scheduler.call(Simulation::copy).get();
+                } catch (ExecutionException e) {
+                    System.err.println("autosave to " + path + " failed: " + e.getCause());
+                    continue;
+                }
+                writeSnapshot(path, copy);
+            }
+        });
+    }
+
+    public synchronized void startRecording(Path path, int interval) throws IOException {
+        // the recorder's writer runs on a virtual thread, the physics thread records into it after every step;
+        // it is quiet, so a failed write does not throw out of the step and stop the physics thread
+        if (recorder != null) {
+            throw new IllegalStateException("already recording to " + recorder.getPath());
+        }
+        TrajectoryRecorder started = new TrajectoryRecorder(path, interval);
+        started.setQuiet(true);
+        recorder = started;
+        scheduler.submit(simulation -> simulation.setRecorder(started));
+    }
+
+    public synchronized void startMetricsExport(Path path, long intervalMillis) {
+        // writes the metrics summary every interval, the numbers are plain reads of the counters
+        checkInterval(intervalMillis);
+        start("metrics-export", () -> {
+            while (true) {
+                Thread.sleep(intervalMillis);
+                String summary = Metrics.ENABLED ? Metrics.summary() : "metrics are off, start with -Dspacesim2d.metrics=true\n";
+                writeText(path, summary, "metrics export");
+            }
+        });
+    }
+
+    public synchronized void startDiagnosticsExport(Path path, long intervalMillis) {
+        // writes the simulation's diagnostics series every interval, and a last time on close; the series
+        // is copied under its own lock, the physics thread only waits for that copy
+        checkInterval(intervalMillis);
+        Diagnostics series = scheduler.getSimulation().getDiagnostics();
+        if (series == null) {
+            throw new IllegalStateException("the simulation has no diagnostics");
+        }
+        diagnostics = path;
+        start("diagnostics-export", () -> {
+            while (true) {
+                Thread.sleep(intervalMillis);
+                writeText(path, series.toCsv(), "diagnostics export");
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // call after the scheduler has stopped: the simulation is then safe to read from this thread,
+        // so the last autosave sees the final state and the recorder gets every step
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while stopping the services", e);
+        }
+        if (recorder != null) {
+            scheduler.getSimulation().setRecorder(null);
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                // the file is left without its index, the other services still write their last files
+                System.err.println("trajectory recording to " + recorder.getPath() + " failed: " + e.getMessage());
+            }
+        }
+        if (autosave != null) {
+            writeSnapshot(autosave, scheduler.getSimulation());
+        }
+        if (diagnostics != null) {
+            writeText(diagnostics, scheduler.getSimulation().getDiagnostics().toCsv(), "diagnostics export");
+        }
+    }
+
+    private void start(String name, Service service) {
+        if (closed) {
+            throw new IllegalStateException("services are closed");
+        }
+        threads.add(Thread.ofVirtual().name(name).start(() -> {
+            try {
+                service.run();
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }));
+    }
+
+    private static void writeSnapshot(Path path, Simulation simulation) {
+        try {
+            Path temporary = temporaryFor(path);
+            SnapshotIO.write(temporary, simulation);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (ClosedByInterruptException e) {
+            // closed while writing, close writes the last autosave over it
+        } catch (IOException e) {
+            System.err.println("autosave to " + path + " failed: " + e.getMessage());
+        }
+    }
+
+    private static void writeText(Path path, String text, String what) {
+        try {
+            Path temporary = temporaryFor(path);
+            Files.writeString(temporary, text);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (ClosedByInterruptException e) {
+            // closed while writing, close writes the file once more
+        } catch (IOException e) {
+            System.err.println(what + " to " + path + " failed: " + e.getMessage());
+        }
+    }
+
+    private static Path temporaryFor(Path path) {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    private static void checkInterval(long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("interval must be at least 1 ms: " + intervalMillis);
+        }
+    }
+
+    private interface Service {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.spacesim2d;
+
+import java.util.Arrays;
+
+public class SimulationSnapshot {
+    // copy of what the renderer needs from one published step, written by the physics thread only
+    // it keeps the positions before and after the step so the renderer can interpolate between them
+    int size;
+    // store version when the previous positions were taken, slots can be reordered by removals
+    private int previousVersion;
+    private boolean hasPrevious;
+    long step;
+    long timeNanos;
+    double[] x = new double[0];
+    double[] y = new double[0];
+    double[] prevX = new double[0];
+    double[] prevY = new double[0];
+    double[] radius = new double[0];
+    double[] density = new double[0];
+    SpaceObject[] objects = new SpaceObject[0];
+
+    public int size() {
+        return size;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    void capturePrevious(BodyStore bodies) {
+        int n = bodies.size;
+        ensureCapacity(n);
+        System.arraycopy(bodies.x, 0, prevX, 0, n);
+        System.arraycopy(bodies.y, 0, prevY, 0, n);
+        previousVersion = bodies.version;
+        hasPrevious = true;
+    }
+
+    void capture(BodyStore bodies, long step, long timeNanos) {
+        int n = bodies.size;
+        boolean samePrevious = hasPrevious && bodies.version == previousVersion;
+        ensureCapacity(n);
+        System.arraycopy(bodies.x, 0, x, 0, n);
+        System.arraycopy(bodies.y, 0, y, 0, n);
+        System.arraycopy(bodies.radius, 0, radius, 0, n);
+        for (int i = 0; i < n; i++) {
+            density[i] = bodies.mass[i] / (Math.PI * radius[i] * radius[i]);
+        }
+        // drop references to objects that are gone so they can be collected
+        Arrays.fill(objects, n, Math.max(size, n), null);
+        System.arraycopy(bodies.objects, 0, objects, 0, n);
+        if (!samePrevious) {
+            // objects were added or removed during the step or no previous state was captured,
+            // nothing to interpolate from
+            System.arraycopy(x, 0, prevX, 0, n);
+            System.arraycopy(y, 0, prevY, 0, n);
+        }
+        size = n;
+        hasPrevious = false;
+        this.step = step;
+        this.timeNanos = timeNanos;
+    }
+
+    private void ensureCapacity(int n) {
+        if (x.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, x.length * 2);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        density = Arrays.copyOf(density, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+    }
+}
@@ -0,0 +1,219 @@
+package org.example.spacesim2d;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SnapshotIO {
+    // binary checkpoint of the full simulation state, read and written through memory mapped buffers
+    // layout, little endian, every section starts at a multiple of 8:
+    //   header   magic "SS2D", version, object count, name count, step (long), G, width, height
+    //   names    name count times (length in bytes, utf-8 bytes), objects refer to them by index
+    //   columns  x, y, vx, vy, fx, fy, mass, radius as doubles, name index as int, kind as byte
+    //   ships    ship count, then (index, orientation) per ship
+    // the columns are bulk copied straight into the body store, so a million objects take well under a second
+    public static final int MAGIC = 0x53533244;
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final byte KIND_OBJECT = 0;
+    private static final byte KIND_SHIP = 1;
+
+    public static void write(Path path, Simulation simulation) throws IOException {
+        BodyStore bodies = simulation.getBodies();
+        int n = bodies.size;
+
+        // distinct names, most objects share a handful of them
+        Map<String, Integer> nameIndex = new HashMap<>();
+        List<byte[]> names = new ArrayList<>();
+        int[] objectName = new int[n];
+        byte[] kind = new byte[n];
+        int shipCount = 0;
+        for (int i = 0; i < n; i++) {
+            SpaceObject object = bodies.objects[i];
+            String name = object.getName() == null ? "" : object.getName();
+            Integer index = nameIndex.get(name);
+            if (index == null) {
+                index = names.size();
+                nameIndex.put(name, index);
+                names.add(name.getBytes(StandardCharsets.UTF_8));
+            }
+            objectName[i] = index;
+            kind[i] = object instanceof Ship ? KIND_SHIP : KIND_OBJECT;
+            if (kind[i] == KIND_SHIP) {
+                shipCount++;
+            }
+        }
+        long namesSize = 0;
+        for (byte[] name : names) {
+            namesSize += 4 + name.length;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, position, align(HEADER_SIZE + namesSize));
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(names.size());
+            header.putLong(simulation.getStep()).putDouble(simulation.getG());
+            header.putInt(simulation.getWidth()).putInt(simulation.getHeight());
+            for (byte[] name : names) {
+                header.putInt(name.length).put(name);
+            }
+            header.force();
+            position += header.capacity();
+
+            for (double[] column : columns(bodies)) {
+                MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, position, 8L * n);
+                buffer.asDoubleBuffer().put(column, 0, n);
+                buffer.force();
+                position += align(8L * n);
+            }
+            MappedByteBuffer nameColumn = map(channel, FileChannel.MapMode.READ_WRITE, position, 4L * n);
+            nameColumn.asIntBuffer().put(objectName, 0, n);
+            nameColumn.force();
+            position += align(4L * n);
+            MappedByteBuffer kindColumn = map(channel, FileChannel.MapMode.READ_WRITE, position, n);
+            kindColumn.put(kind, 0, n);
+            kindColumn.force();
+            position += align(n);
+
+            MappedByteBuffer ships = map(channel, FileChannel.MapMode.READ_WRITE, position, 8 + 16L * shipCount);
+            ships.putInt(shipCount).putInt(0);
+            for (int i = 0; i < n; i++) {
+                if (bodies.objects[i] instanceof Ship ship) {
+                    ships.putLong(i).putDouble(ship.getOrientation());
+                }
+            }
+            ships.force();
+        }
+    }
+
+    public static Simulation read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException(path + ": too short for a snapshot");
+            }
+            MappedByteBuffer fixed = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (fixed.getInt() != MAGIC) {
+                throw new IOException(path + ": not a snapshot");
+            }
+            int version = fixed.getInt();
+            if (version != VERSION) {
+                throw new IOException(path + ": unsupported snapshot version " + version);
+            }
+            int n = fixed.getInt();
+            int nameCount = fixed.getInt();
+            long step = fixed.getLong();
+            double G = fixed.getDouble();
+            int width = fixed.getInt();
+            int height = fixed.getInt();
+            if (n < 0 || nameCount < 0 || step < 0 || step > Integer.MAX_VALUE) {
+                throw new IOException(path + ": corrupt header");
+            }
+
+            // the names section has no stored length, it is mapped up to the end of the file and read in order
+            MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, Integer.MAX_VALUE));
+            header.position(HEADER_SIZE);
+            // every length is checked against what is left, so a corrupt file fails here instead of
+            // allocating whatever a garbage length asks for
+            if (nameCount > header.remaining() / 4) {
+                throw new IOException(path + ": corrupt snapshot: " + nameCount + " names do not fit in the file");
+            }
+            String[] names = new String[nameCount];
+            for (int k = 0; k < nameCount; k++) {
+                if (header.remaining() < 4) {
+                    throw new IOException(path + ": corrupt snapshot: names section ends inside name " + k);
+                }
+                int length = header.getInt();
+                if (length < 0 || length > header.remaining()) {
+                    throw new IOException(path + ": corrupt snapshot: name length " + length + " of name " + k
+                            + " with " + header.remaining() + " bytes left");
+                }
+                byte[] name = new byte[length];
+                header.get(name);
+                names[k] = new String(name, StandardCharsets.UTF_8);
+            }
+            long position = align(header.position());
+            long expected = position + 8 * align(8L * n) + align(4L * n) + align(n) + 8;
+            if (fileSize < expected) {
+                throw new IOException(path + ": truncated snapshot, expected at least " + expected + " bytes but got " + fileSize);
+            }
+
+            Simulation simulation = new Simulation(new ArrayList<>(), (int) step, width, height);
+            simulation.setG(G);
+            BodyStore bodies = simulation.getBodies();
+            bodies.addSlots(n);
+            for (double[] column : columns(bodies)) {
+                map(channel, FileChannel.MapMode.READ_ONLY, position, 8L * n).asDoubleBuffer().get(column, 0, n);
+                position += align(8L * n);
+            }
+            int[] objectName = new int[n];
+            map(channel, FileChannel.MapMode.READ_ONLY, position, 4L * n).asIntBuffer().get(objectName, 0, n);
+            position += align(4L * n);
+            byte[] kind = new byte[n];
+            map(channel, FileChannel.MapMode.READ_ONLY, position, n).get(kind, 0, n);
+            position += align(n);
+
+            MappedByteBuffer ships = map(channel, FileChannel.MapMode.READ_ONLY, position, fileSize - position);
+            int shipCount = ships.getInt();
+            ships.getInt();
+            if (shipCount < 0 || shipCount > ships.remaining() / 16) {
+                throw new IOException(path + ": corrupt snapshot: ship count " + shipCount);
+            }
+            double[] orientation = new double[n];
+            for (int k = 0; k < shipCount; k++) {
+                long index = ships.getLong();
+                if (index < 0 || index >= n) {
+                    throw new IOException(path + ": ship index " + index + " out of range");
+                }
+                orientation[(int) index] = ships.getDouble();
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (objectName[i] < 0 || objectName[i] >= nameCount) {
+                    throw new IOException(path + ": name index " + objectName[i] + " out of range");
+                }
+                String name = names[objectName[i]];
+                if (kind[i] == KIND_SHIP) {
+                    // the ship's own store is dropped, its state is already in the slot
+                    Ship ship = new Ship(0, 0, 0, 0, 0, 0, orientation[i], width, height);
+                    ship.setName(name);
+                    bodies.objects[i] = ship;
+                    ship.bind(bodies, i);
+                    simulation.adopt(ship);
+                } else {
+                    new SpaceObject(name, bodies, i);
+                }
+            }
+            return simulation;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(path + ": truncated snapshot", e);
+        }
+    }
+
+    private static double[][] columns(BodyStore bodies) {
+        return new double[][] {bodies.x, bodies.y, bodies.vx, bodies.vy, bodies.fx, bodies.fy, bodies.mass, bodies.radius};
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("snapshot section of " + size + " bytes is too large to map");
+        }
+        MappedByteBuffer buffer = channel.map(mode, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -1,27 +1,25 @@
 package org.example.spacesim2d;
 
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
-
 public class SpaceObject {
     private String name;
-    private double radius;
-    private double mass;
-    private double x;
-    private double y;
-    private double vx;
-    private double vy;
-    private double fx = 0;
-    private double fy = 0;
+    // the state lives in a slot of a BodyStore, either the simulation's or a private one of size 1,
+    // or nowhere once the object was absorbed in a merge
+    private BodyStore store;
+    private int index;
+
+    SpaceObject(String name, BodyStore store, int index) {
+        // handle for a slot that was filled in directly, like when loading a snapshot
+        this.name = name;
+        this.store = store;
+        this.index = index;
+        store.objects[index] = this;
+    }
 
     public SpaceObject(String name, double radius, double density, double x, double y, double vx, double vy) {
         this.name = name;
-        this.radius = radius;
-        this.mass = getMassFromDensity(density);
-        this.x = x;
-        this.y = y;
-        this.vx = vx;
-        this.vy = vy;
+        this.store = new BodyStore(1);
+        this.index = store.add(this, radius, 0, x, y, vx, vy, 0, 0);
+        setMass(getMassFromDensity(density));
     }
 
     public SpaceObject(double radius, double density, double x, double y, double vx, double vy) {
@@ -53,75 +51,106 @@ public class SpaceObject {
     }
 
     public double getRadius() {
-        return radius;
+        return live().radius[index];
     }
 
     public void setRadius(double radius) {
-        this.radius = radius;
+        live().radius[index] = radius;
     }
 
     public double getMass() {
-        return mass;
+        return live().mass[index];
     }
 
     public void setMass(double mass) {
-        this.mass = mass;
+        live().mass[index] = mass;
     }
 
     public double getX() {
-        return x;
+        return live().x[index];
     }
 
     public void setX(double x) {
-        this.x = x;
+        live().x[index] = x;
     }
 
     public double getY() {
-        return y;
+        return live().y[index];
     }
 
     public void setY(double y) {
-        this.y = y;
+        live().y[index] = y;
     }
 
     public double getVx() {
-        return vx;
+        return live().vx[index];
     }
 
     public void setVx(double vx) {
-        this.vx = vx;
+        live().vx[index] = vx;
     }
 
     public double getVy() {
-        return vy;
+        return live().vy[index];
     }
 
     public void setVy(double vy) {
-        this.vy = vy;
+        live().vy[index] = vy;
     }
 
     public double getFx() {
-        return fx;
+        return live().fx[index];
     }
 
     public void setFx(double fx) {
-        this.fx = fx;
+        live().fx[index] = fx;
     }
 
     public double getFy() {
-        return fy;
+        return live().fy[index];
     }
 
     public void setFy(double fy) {
-        this.fy = fy;
+        live().fy[index] = fy;
+    }
+
+    public boolean isDiscarded() {
+        // true once the object was absorbed in a merge, its handle then has no state left
+        return store == null;
+    }
+
+    BodyStore getStore() {
+        return store;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    void bind(BodyStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    void discard() {
+        // drops the slot without allocating a store of its own, every read or write after this throws
+        store = null;
+        index = -1;
+    }
+
+    private BodyStore live() {
+        if (store == null) {
+            throw new IllegalStateException((name != null ? name : "object") + " was absorbed in a merge and has no state");
+        }
+        return store;
     }
 
     public double getArea() {
-        return Math.PI * Math.pow(radius, 2);
+        return Math.PI * Math.pow(getRadius(), 2);
     }
 
     public double getDensity() {
-        return mass / getArea();
+        return getMass() / getArea();
     }
 
     public double getMassFromDensity(double density) {
@@ -129,77 +158,104 @@ public class SpaceObject {
     }
 
     public double getVelocity() {
+        double vx = getVx();
+        double vy = getVy();
         return Math.sqrt(vx * vx + vy * vy);
     }
 
 
+    public double getDxToObject(SpaceObject other) {
+        // to the nearest image of the other object when the simulation area wraps around
+        return live().separationX(other.getX() - this.getX());
+    }
+
+    public double getDyToObject(SpaceObject other) {
+        return live().separationY(other.getY() - this.getY());
+    }
+
     public double[] getVectorToObject(SpaceObject other) {
         // returns the vector from this object to the other object
         // in the form of [dx, dy]
-        return new double[]{
-                other.getX() - this.getX(),
-                other.getY() - this.getY()
-        };
+        return getVectorToObject(other, new double[2]);
+    }
+
+    public double[] getVectorToObject(SpaceObject other, double[] out) {
+        // same as above, written into a caller supplied array
+        out[0] = getDxToObject(other);
+        out[1] = getDyToObject(other);
+        return out;
     }
 
     public double getDistanceToObject(SpaceObject other) {
         // returns the distance between the centers of this object and the other object
-        double[] vec = getVectorToObject(other);
-        double dx = vec[0];
-        double dy = vec[1];
+        double dx = getDxToObject(other);
+        double dy = getDyToObject(other);
         return Math.sqrt(dx * dx + dy * dy);
     }
 
     public double[] getNormalVectorToObject(SpaceObject other) {
         // returns the normal vector from this object to the other object
         // in the form of [nx, ny]
+        return getNormalVectorToObject(other, new double[2]);
+    }
+
+    public double[] getNormalVectorToObject(SpaceObject other, double[] out) {
         double distance = getDistanceToObject(other);
-        double[] vec = getVectorToObject(other);
-        return new double[]{
-                vec[0] / distance,
-                vec[1] / distance
-        };
+        out[0] = getDxToObject(other) / distance;
+        out[1] = getDyToObject(other) / distance;
+        return out;
     }
 
     public static double[] getTangent(double[] normal) {
         // returns the tangent vector to the normal vector
         // in the form of [tx, ty]
-        return new double[]{
-                -normal[1],
-                normal[0]
-        };
+        return getTangent(normal, new double[2]);
+    }
+
+    public static double[] getTangent(double[] normal, double[] out) {
+        double nx = normal[0];
+        out[0] = -normal[1];
+        out[1] = nx;
+        return out;
     }
 
     public static double[] convertVecToNormal(double[] vector, double[] normal) {
-        double[] tangent = getTangent(normal);
+        return convertVecToNormal(vector, normal, new double[2]);
+    }
+
+    public static double[] convertVecToNormal(double[] vector, double[] normal, double[] out) {
+        // the tangent is (-normal[1], normal[0])
         double x = vector[0];
         double y = vector[1];
-        double nx = x * normal[0] + y * normal[1];
-        double ny = x * tangent[0] + y * tangent[1];
-        return new double[]{nx, ny};
+        out[0] = x * normal[0] + y * normal[1];
+        out[1] = -x * normal[1] + y * normal[0];
+        return out;
     }
 
     public static double[] convertNormalToOriginal(double[] vector, double[] normal) {
-        double[] tangent = getTangent(normal);
+        return convertNormalToOriginal(vector, normal, new double[2]);
+    }
+
+    public static double[] convertNormalToOriginal(double[] vector, double[] normal, double[] out) {
         double nx = vector[0];
         double ny = vector[1];
-        double x = nx * normal[0] + ny * tangent[0];
-        double y = nx * normal[1] + ny * tangent[1];
-        return new double[]{x, y};
+        out[0] = nx * normal[0] - ny * normal[1];
+        out[1] = nx * normal[1] + ny * normal[0];
+        return out;
     }
 
     public void addForce(double fx, double fy) {
-        this.fx += fx;
-        this.fy += fy;
+        BodyStore store = live();
+        store.fx[index] += fx;
+        store.fy[index] += fy;
     }
 
     public void calculateGravity(SpaceObject other, double G) {
-        double m1 = mass;
+        double m1 = getMass();
         double m2 = other.getMass();
-        double[] vec = getVectorToObject(other);
-        double dx = vec[0];
-        double dy = vec[1];
-        double distance = getDistanceToObject(other);
+        double dx = getDxToObject(other);
+        double dy = getDyToObject(other);
+        double distance = Math.sqrt(dx * dx + dy * dy);
         double force = (G * m1 * m2) / (distance * distance);
         double fx = force * dx / distance;
         double fy = force * dy / distance;
@@ -208,23 +264,25 @@ public class SpaceObject {
     }
 
     public void move(double speed) {
-        x += vx * speed;
-        y += vy * speed;
+        BodyStore store = live();
+        store.x[index] += store.vx[index] * speed;
+        store.y[index] += store.vy[index] * speed;
+    }
+
+    public boolean isControlled() {
+        // controlled objects get applyControls() called every step before their velocity is updated
+        return false;
+    }
+
+    public void applyControls() {
     }
 
     public void accelerate() {
-        vx += fx / mass;
-        vy += fy / mass;
-        fx = 0;
-        fy = 0;
-    }
-
-    public void draw(GraphicsContext gc) {
-        // draw the object on the canvas
-        // the color is based on the density of the object
-        // density of around 0 - 10 goes from dark green to fully green
-        // density of around 10 - 100 goes from fully green to white
-        gc.setFill(Color.rgb((int) Math.min(Math.max(60 * Math.log(getDensity() - 9), 0), 255), (int) Math.min(55 + 20 * getDensity(), 255), (int) Math.min(Math.max(60 * Math.log(getDensity() - 7), 10), 255)));
-        gc.fillOval(x - radius, y - radius, 2 * radius, 2 * radius);
+        applyControls();
+        BodyStore store = live();
+        store.vx[index] += store.fx[index] / store.mass[index];
+        store.vy[index] += store.fy[index] / store.mass[index];
+        store.fx[index] = 0;
+        store.fy[index] = 0;
     }
 }
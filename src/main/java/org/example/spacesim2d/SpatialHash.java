@@ -0,0 +1,549 @@
+package org.example.spacesim2d;
+
+import java.util.Arrays;
+
+public class SpatialHash {
+    // broad phase for collisions: objects are binned into square cells that are at least
+    // as wide as the largest object, so two touching objects are always in the same or neighbouring cells
+    // cells are hashed into a table and sorted with a counting sort, all arrays are reused between steps
+    // the same grid answers picking queries: the point query looks at 3 x 3 cells and nearest neighbour
+    // searches grow ring by ring until no closer object can exist, none of them allocate
+    // in a periodic box objects within a cell of an edge are also looked up at their images across it,
+    // so pairs touching through the seam are found as well, and the point and range queries do the same
+    // for query points near an edge
+    // for continuous collisions every object is entered into all cells its swept box over the step touches,
+    // a pair is reported only from the cell holding the lower corner of the overlap of both boxes,
+    // so a pair sharing several cells is still reported once; the cells are sized to the typical swept box,
+    // the few objects that would still cover many of them are checked against every box directly
+    private static final int MAX_SWEPT_CELLS = 64;
+    private static final int[] NEIGHBOUR_X = {0, 1, 1, 0, -1};
+    private static final int[] NEIGHBOUR_Y = {0, 0, 1, 1, 1};
+
+    private double cellSize = 1;
+    private double maxRadius;
+    private int minCellX;
+    private int minCellY;
+    private int maxCellX;
+    private int maxCellY;
+    private int size;
+    private int mask;
+    private int[] cellStart = new int[0];
+    private int[] sorted = new int[0];
+    private int[] bodySlot = new int[0];
+    private int[] cellX = new int[0];
+    private int[] cellY = new int[0];
+    private int[] pairs = new int[64];
+    private int pairCount;
+    private double[] nearestDistance = new double[0];
+    // positions and periodic box of the last rebuild, for the image lookups
+    private double[] bodyX = new double[0];
+    private double[] bodyY = new double[0];
+    private double periodX;
+    private double periodY;
+
+    // swept broad phase, one entry per object and touched cell
+    private int entryCount;
+    private int sweptMask;
+    private int[] sweptStart = new int[0];
+    private int[] entryBody = new int[0];
+    private int[] entryCellX = new int[0];
+    private int[] entryCellY = new int[0];
+    private int[] entrySlot = new int[0];
+    private int[] sweptSorted = new int[0];
+    private double[] boxMinX = new double[0];
+    private double[] boxMinY = new double[0];
+    private double[] boxMaxX = new double[0];
+    private double[] boxMaxY = new double[0];
+    private boolean[] outlier = new boolean[0];
+    private int[] outliers = new int[0];
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    public int[] getPairs() {
+        // candidate pairs as [a0, b0, a1, b1, ...], valid up to 2 * getPairCount()
+        return pairs;
+    }
+
+    public void rebuild(BodyStore bodies) {
+        // cell size derived from the largest object
+        rebuild(bodies, Math.max(2 * maxRadius(bodies), 1));
+    }
+
+    public void rebuild(BodyStore bodies, double cellSize) {
+        int n = bodies.size;
+        boolean changed = n != size || cellSize != this.cellSize;
+        ensureCapacity(n);
+        size = n;
+        this.cellSize = cellSize;
+
+        maxRadius = maxRadius(bodies);
+        bodyX = bodies.x;
+        bodyY = bodies.y;
+        periodX = bodies.periodX;
+        periodY = bodies.periodY;
+        minCellX = Integer.MAX_VALUE;
+        minCellY = Integer.MAX_VALUE;
+        maxCellX = Integer.MIN_VALUE;
+        maxCellY = Integer.MIN_VALUE;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        for (int i = 0; i < n; i++) {
+            int cx = (int) Math.floor(x[i] / cellSize);
+            int cy = (int) Math.floor(y[i] / cellSize);
+            minCellX = Math.min(minCellX, cx);
+            minCellY = Math.min(minCellY, cy);
+            maxCellX = Math.max(maxCellX, cx);
+            maxCellY = Math.max(maxCellY, cy);
+            int slot = slot(cx, cy);
+            if (slot != bodySlot[i]) {
+                changed = true;
+            }
+            cellX[i] = cx;
+            cellY[i] = cy;
+            bodySlot[i] = slot;
+        }
+        if (!changed) {
+            // no object moved to another cell, the previous order is still valid
+            return;
+        }
+
+        // counting sort of the objects by slot
+        int tableSize = mask + 1;
+        Arrays.fill(cellStart, 0, tableSize + 1, 0);
+        for (int i = 0; i < n; i++) {
+            cellStart[bodySlot[i]]++;
+        }
+        int sum = 0;
+        for (int s = 0; s < tableSize; s++) {
+            sum += cellStart[s];
+            cellStart[s] = sum;
+        }
+        cellStart[tableSize] = n;
+        // filling backwards leaves each slot's start in cellStart and keeps indices ascending within a slot
+        for (int i = n - 1; i >= 0; i--) {
+            sorted[--cellStart[bodySlot[i]]] = i;
+        }
+    }
+
+    public int findPairs() {
+        // collects every pair of objects in the same or neighbouring cells, each pair once
+        pairCount = 0;
+        if (periodX != 0 && (periodX < 3 * cellSize || periodY < 3 * cellSize)) {
+            // so few cells across the box that an object's neighbours and images overlap, take every pair
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    addPair(i, j);
+                }
+            }
+            return pairCount;
+        }
+        for (int i = 0; i < size; i++) {
+            int cx = cellX[i];
+            int cy = cellY[i];
+            for (int k = 0; k < NEIGHBOUR_X.length; k++) {
+                int tx = cx + NEIGHBOUR_X[k];
+                int ty = cy + NEIGHBOUR_Y[k];
+                int slot = slot(tx, ty);
+                int end = cellStart[slot + 1];
+                for (int p = cellStart[slot]; p < end; p++) {
+                    int j = sorted[p];
+                    // different cells can share a slot, so check the actual cell
+                    if (cellX[j] != tx || cellY[j] != ty || (k == 0 && j <= i)) {
+                        continue;
+                    }
+                    addPair(Math.min(i, j), Math.max(i, j));
+                }
+            }
+        }
+        if (periodX != 0) {
+            findImagePairs();
+        }
+        return pairCount;
+    }
+
+    private void findImagePairs() {
+        // an object near an edge is shifted by the box size to the other side and paired with the objects
+        // around that image; the pair is taken from the lower index only, the higher one finds it through its own image
+        for (int i = 0; i < size; i++) {
+            double x = bodyX[i];
+            double y = bodyY[i];
+            double shiftX = x < cellSize ? periodX : x >= periodX - cellSize ? -periodX : 0;
+            double shiftY = y < cellSize ? periodY : y >= periodY - cellSize ? -periodY : 0;
+            if (shiftX == 0 && shiftY == 0) {
+                continue;
+            }
+            for (int image = 1; image < 4; image++) {
+                double sx = (image & 1) != 0 ? shiftX : 0;
+                double sy = (image & 2) != 0 ? shiftY : 0;
+                if ((image & 1) != 0 && sx == 0 || (image & 2) != 0 && sy == 0) {
+                    continue;
+                }
+                int cx = (int) Math.floor((x + sx) / cellSize);
+                int cy = (int) Math.floor((y + sy) / cellSize);
+                for (int tx = cx - 1; tx <= cx + 1; tx++) {
+                    for (int ty = cy - 1; ty <= cy + 1; ty++) {
+                        int slot = slot(tx, ty);
+                        int end = cellStart[slot + 1];
+                        for (int p = cellStart[slot]; p < end; p++) {
+                            int j = sorted[p];
+                            if (j > i && cellX[j] == tx && cellY[j] == ty) {
+                                addPair(i, j);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public int findSweptPairs(BodyStore bodies, double[] startX, double[] startY) {
+        // pairs of objects whose boxes around the path from the start to the current position overlap,
+        // each pair once, read them with getPairs like findPairs
+        int n = bodies.size;
+        if (boxMinX.length < n) {
+            int capacity = Math.max(n, boxMinX.length * 2);
+            boxMinX = new double[capacity];
+            boxMinY = new double[capacity];
+            boxMaxX = new double[capacity];
+            boxMaxY = new double[capacity];
+            outlier = new boolean[capacity];
+            outliers = new int[capacity];
+        }
+        double extent = 0;
+        for (int i = 0; i < n; i++) {
+            double r = bodies.radius[i];
+            boxMinX[i] = Math.min(startX[i], bodies.x[i]) - r;
+            boxMinY[i] = Math.min(startY[i], bodies.y[i]) - r;
+            boxMaxX[i] = Math.max(startX[i], bodies.x[i]) + r;
+            boxMaxY[i] = Math.max(startY[i], bodies.y[i]) + r;
+            extent += Math.max(boxMaxX[i] - boxMinX[i], boxMaxY[i] - boxMinY[i]);
+        }
+        double cellSize = Math.max(Math.max(2 * maxRadius(bodies), n == 0 ? 0 : extent / n), 1);
+
+        entryCount = 0;
+        int outlierCount = 0;
+        for (int i = 0; i < n; i++) {
+            int fromX = (int) Math.floor(boxMinX[i] / cellSize);
+            int fromY = (int) Math.floor(boxMinY[i] / cellSize);
+            int toX = (int) Math.floor(boxMaxX[i] / cellSize);
+            int toY = (int) Math.floor(boxMaxY[i] / cellSize);
+            outlier[i] = (long) (toX - fromX + 1) * (toY - fromY + 1) > MAX_SWEPT_CELLS;
+            if (outlier[i]) {
+                outliers[outlierCount++] = i;
+                continue;
+            }
+            for (int cx = fromX; cx <= toX; cx++) {
+                for (int cy = fromY; cy <= toY; cy++) {
+                    addEntry(i, cx, cy);
+                }
+            }
+        }
+
+        // counting sort of the entries by slot
+        int tableSize = Integer.highestOneBit(Math.max(2 * entryCount - 1, 16)) << 1;
+        if (tableSize > sweptMask + 1) {
+            sweptMask = tableSize - 1;
+            sweptStart = new int[tableSize + 1];
+        }
+        tableSize = sweptMask + 1;
+        Arrays.fill(sweptStart, 0, tableSize + 1, 0);
+        for (int e = 0; e < entryCount; e++) {
+            int slot = ((entryCellX[e] * 73856093) ^ (entryCellY[e] * 19349663)) & sweptMask;
+            entrySlot[e] = slot;
+            sweptStart[slot]++;
+        }
+        int sum = 0;
+        for (int s = 0; s < tableSize; s++) {
+            sum += sweptStart[s];
+            sweptStart[s] = sum;
+        }
+        sweptStart[tableSize] = entryCount;
+        for (int e = entryCount - 1; e >= 0; e--) {
+            sweptSorted[--sweptStart[entrySlot[e]]] = e;
+        }
+
+        pairCount = 0;
+        for (int s = 0; s < tableSize; s++) {
+            int end = sweptStart[s + 1];
+            for (int p = sweptStart[s]; p < end; p++) {
+                int a = sweptSorted[p];
+                int i = entryBody[a];
+                for (int q = p + 1; q < end; q++) {
+                    int b = sweptSorted[q];
+                    int j = entryBody[b];
+                    if (entryCellX[a] != entryCellX[b] || entryCellY[a] != entryCellY[b] || i == j) {
+                        continue;
+                    }
+                    double overlapMinX = Math.max(boxMinX[i], boxMinX[j]);
+                    double overlapMinY = Math.max(boxMinY[i], boxMinY[j]);
+                    if (overlapMinX > Math.min(boxMaxX[i], boxMaxX[j]) || overlapMinY > Math.min(boxMaxY[i], boxMaxY[j])) {
+                        continue;
+                    }
+                    // only the cell holding the lower corner of the overlap reports the pair
+                    if ((int) Math.floor(overlapMinX / cellSize) == entryCellX[a]
+                            && (int) Math.floor(overlapMinY / cellSize) == entryCellY[a]) {
+                        addPair(Math.min(i, j), Math.max(i, j));
+                    }
+                }
+            }
+        }
+        for (int k = 0; k < outlierCount; k++) {
+            int i = outliers[k];
+            for (int j = 0; j < n; j++) {
+                // a pair of outliers is reported by the lower one
+                if (j == i || outlier[j] && j < i) {
+                    continue;
+                }
+                if (Math.max(boxMinX[i], boxMinX[j]) <= Math.min(boxMaxX[i], boxMaxX[j])
+                        && Math.max(boxMinY[i], boxMinY[j]) <= Math.min(boxMaxY[i], boxMaxY[j])) {
+                    addPair(Math.min(i, j), Math.max(i, j));
+                }
+            }
+        }
+        return pairCount;
+    }
+
+    private void addEntry(int body, int cx, int cy) {
+        if (entryCount == entryBody.length) {
+            int capacity = Math.max(16, entryCount * 2);
+            entryBody = Arrays.copyOf(entryBody, capacity);
+            entryCellX = Arrays.copyOf(entryCellX, capacity);
+            entryCellY = Arrays.copyOf(entryCellY, capacity);
+            entrySlot = Arrays.copyOf(entrySlot, capacity);
+            sweptSorted = Arrays.copyOf(sweptSorted, capacity);
+        }
+        entryBody[entryCount] = body;
+        entryCellX[entryCount] = cx;
+        entryCellY[entryCount] = cy;
+        entryCount++;
+    }
+
+    public int findAt(BodyStore bodies, double x, double y) {
+        // lowest index of an object containing the point, or -1
+        // an object containing the point has its centre within one radius of it, with the default
+        // cell size that is half a cell, so 3 x 3 cells cover it
+        // in a periodic box a point within that reach of an edge is also looked up at its images across it
+        double shiftX = imageShift(x, maxRadius, periodX);
+        double shiftY = imageShift(y, maxRadius, periodY);
+        int found = -1;
+        for (int image = 0; image < 4; image++) {
+            double sx = (image & 1) != 0 ? shiftX : 0;
+            double sy = (image & 2) != 0 ? shiftY : 0;
+            if ((image & 1) != 0 && sx == 0 || (image & 2) != 0 && sy == 0) {
+                continue;
+            }
+            found = findAt(bodies, x + sx, y + sy, found);
+        }
+        return found;
+    }
+
+    private int findAt(BodyStore bodies, double x, double y, int found) {
+        int span = Math.max(1, (int) Math.ceil(maxRadius / cellSize));
+        int cx = (int) Math.floor(x / cellSize);
+        int cy = (int) Math.floor(y / cellSize);
+        for (int tx = cx - span; tx <= cx + span; tx++) {
+            for (int ty = cy - span; ty <= cy + span; ty++) {
+                int slot = slot(tx, ty);
+                int end = cellStart[slot + 1];
+                for (int p = cellStart[slot]; p < end; p++) {
+                    int i = sorted[p];
+                    if (cellX[i] != tx || cellY[i] != ty || (found != -1 && i > found)) {
+                        continue;
+                    }
+                    double dx = bodies.x[i] - x;
+                    double dy = bodies.y[i] - y;
+                    if (Math.sqrt(dx * dx + dy * dy) < bodies.radius[i]) {
+                        found = i;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    public int findInRange(BodyStore bodies, double x, double y, double range, int[] out) {
+        // objects that reach into the circle around the point, in no particular order
+        // fills out up to its length and returns how many were found in total
+        // in a periodic box the circle is also looked up at its images across the edges it is near,
+        // at the nearest image of every object
+        int count = 0;
+        double reach = range + maxRadius;
+        int span = (int) Math.ceil(reach / cellSize);
+        // the cells walked around two images of the point must not overlap, or an object is found twice
+        boolean imagesOverlap = periodX != 0 && 2 * (reach + cellSize) >= Math.min(periodX, periodY);
+        if (!(reach >= 0) || imagesOverlap || (long) (2 * span + 1) * (2 * span + 1) > 4L * size + 64) {
+            // the circle covers more cells than there are objects, checking every object is cheaper
+            for (int i = 0; i < size; i++) {
+                count = addInRange(bodies, i, x, y, range, out, count);
+            }
+            return count;
+        }
+        double shiftX = imageShift(x, reach, periodX);
+        double shiftY = imageShift(y, reach, periodY);
+        for (int image = 0; image < 4; image++) {
+            double sx = (image & 1) != 0 ? shiftX : 0;
+            double sy = (image & 2) != 0 ? shiftY : 0;
+            if ((image & 1) != 0 && sx == 0 || (image & 2) != 0 && sy == 0) {
+                continue;
+            }
+            int cx = (int) Math.floor((x + sx) / cellSize);
+            int cy = (int) Math.floor((y + sy) / cellSize);
+            for (int tx = cx - span; tx <= cx + span; tx++) {
+                for (int ty = cy - span; ty <= cy + span; ty++) {
+                    int slot = slot(tx, ty);
+                    int end = cellStart[slot + 1];
+                    for (int p = cellStart[slot]; p < end; p++) {
+                        int i = sorted[p];
+                        if (cellX[i] == tx && cellY[i] == ty) {
+                            count = addInRange(bodies, i, x, y, range, out, count);
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static double imageShift(double position, double reach, double period) {
+        // the shift to the image of a point within reach of an edge of a periodic box, or 0
+        if (period == 0) {
+            return 0;
+        }
+        return position < reach ? period : position >= period - reach ? -period : 0;
+    }
+
+    public int findNearest(BodyStore bodies, double x, double y, int k, int[] out) {
+        // the k objects with the closest surface (distance to centre minus radius), closest first
+        // ties go to the lower index, returns how many were found, at most min(k, out.length)
+        k = Math.min(k, Math.min(out.length, size));
+        if (k <= 0) {
+            return 0;
+        }
+        if (nearestDistance.length < k) {
+            nearestDistance = new double[Math.max(k, 8)];
+        }
+        int found = 0;
+        int cx = (int) Math.floor(x / cellSize);
+        int cy = (int) Math.floor(y / cellSize);
+        // beyond this ring there are no objects at all
+        int lastRing = Math.max(Math.max(cx - minCellX, maxCellX - cx), Math.max(cy - minCellY, maxCellY - cy));
+        long visited = 0;
+        for (int ring = 0; ring <= lastRing; ring++) {
+            // everything from this ring on is at least this far away
+            double bound = (ring - 1) * cellSize - maxRadius;
+            if (found == k && bound > nearestDistance[k - 1]) {
+                break;
+            }
+            visited += ring == 0 ? 1 : 8L * ring;
+            if (visited > 4L * size + 64) {
+                // sparse scene, a plain scan is cheaper than walking empty cells
+                found = 0;
+                for (int i = 0; i < size; i++) {
+                    found = offerNearest(bodies, i, x, y, k, out, found);
+                }
+                return found;
+            }
+            for (int tx = cx - ring; tx <= cx + ring; tx++) {
+                boolean edge = tx == cx - ring || tx == cx + ring;
+                for (int ty = cy - ring; ty <= cy + ring; ty += edge ? 1 : 2 * ring) {
+                    int slot = slot(tx, ty);
+                    int end = cellStart[slot + 1];
+                    for (int p = cellStart[slot]; p < end; p++) {
+                        int i = sorted[p];
+                        if (cellX[i] == tx && cellY[i] == ty) {
+                            found = offerNearest(bodies, i, x, y, k, out, found);
+                        }
+                    }
+                    if (ring == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private int addInRange(BodyStore bodies, int i, double x, double y, double range, int[] out, int count) {
+        double dx = bodies.separationX(bodies.x[i] - x);
+        double dy = bodies.separationY(bodies.y[i] - y);
+        if (Math.sqrt(dx * dx + dy * dy) < range + bodies.radius[i]) {
+            if (count < out.length) {
+                out[count] = i;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private int offerNearest(BodyStore bodies, int i, double x, double y, int k, int[] out, int found) {
+        // insertion into the sorted list of the k best candidates
+        double dx = bodies.x[i] - x;
+        double dy = bodies.y[i] - y;
+        double distance = Math.sqrt(dx * dx + dy * dy) - bodies.radius[i];
+        if (Double.isNaN(distance)) {
+            return found;
+        }
+        int position = found;
+        while (position > 0 && (distance < nearestDistance[position - 1]
+                || distance == nearestDistance[position - 1] && i < out[position - 1])) {
+            position--;
+        }
+        if (position >= k) {
+            return found;
+        }
+        int last = Math.min(found, k - 1);
+        for (int p = last; p > position; p--) {
+            nearestDistance[p] = nearestDistance[p - 1];
+            out[p] = out[p - 1];
+        }
+        nearestDistance[position] = distance;
+        out[position] = i;
+        return Math.min(found + 1, k);
+    }
+
+    private static double maxRadius(BodyStore bodies) {
+        double maxRadius = 0;
+        double[] radius = bodies.radius;
+        for (int i = 0; i < bodies.size; i++) {
+            maxRadius = Math.max(maxRadius, radius[i]);
+        }
+        return maxRadius;
+    }
+
+    private void addPair(int a, int b) {
+        if (2 * pairCount + 2 > pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[2 * pairCount] = a;
+        pairs[2 * pairCount + 1] = b;
+        pairCount++;
+    }
+
+    private int slot(int cx, int cy) {
+        return ((cx * 73856093) ^ (cy * 19349663)) & mask;
+    }
+
+    private void ensureCapacity(int n) {
+        if (sorted.length < n) {
+            int capacity = Math.max(n, sorted.length * 2);
+            sorted = new int[capacity];
+            bodySlot = new int[capacity];
+            cellX = new int[capacity];
+            cellY = new int[capacity];
+            // invalid slot so the first rebuild always sorts
+            Arrays.fill(bodySlot, -1);
+        }
+        int tableSize = Integer.highestOneBit(Math.max(2 * n - 1, 16)) << 1;
+        if (tableSize > mask + 1) {
+            mask = tableSize - 1;
+            cellStart = new int[tableSize + 1];
+            Arrays.fill(bodySlot, -1);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.spacesim2d;
+
+public class StateDivergenceException extends RuntimeException {
+    // a replayed run's StateHash differs from the reference hash recorded for the same step
+    private final long step;
+
+    public StateDivergenceException(long step) {
+        super("state diverged from the reference at step " + step);
+        this.step = step;
+    }
+
+    public long getStep() {
+        return step;
+    }
+}
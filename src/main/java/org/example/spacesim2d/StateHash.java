@@ -0,0 +1,42 @@
+package org.example.spacesim2d;
+
+public class StateHash {
+    // 64 bit hash over the exact bits of the step counter and every object's state,
+    // two engines that agree on it at a step computed the same numbers, not just similar ones
+    // the state includes the forces, which carry over into the next step, and a ship's controls (orientation,
+    // mouse target, steering countdown and acceleration), so a divergence there shows at the step it happens
+
+    public static long of(Simulation simulation) {
+        BodyStore bodies = simulation.getBodies();
+        long hash = mix(0x243F6A8885A308D3L, simulation.getStep());
+        hash = mix(hash, bodies.size);
+        for (int i = 0; i < bodies.size; i++) {
+            hash = mix(hash, Double.doubleToLongBits(bodies.x[i]));
+            hash = mix(hash, Double.doubleToLongBits(bodies.y[i]));
+            hash = mix(hash, Double.doubleToLongBits(bodies.vx[i]));
+            hash = mix(hash, Double.doubleToLongBits(bodies.vy[i]));
+            hash = mix(hash, Double.doubleToLongBits(bodies.mass[i]));
+            hash = mix(hash, Double.doubleToLongBits(bodies.radius[i]));
+            hash = mix(hash, Double.doubleToLongBits(bodies.fx[i]));
+            hash = mix(hash, Double.doubleToLongBits(bodies.fy[i]));
+            if (bodies.objects[i] instanceof Ship ship) {
+                hash = mix(hash, Double.doubleToLongBits(ship.getOrientation()));
+                hash = mix(hash, Double.doubleToLongBits(ship.getMouseX()));
+                hash = mix(hash, Double.doubleToLongBits(ship.getMouseY()));
+                hash = mix(hash, ship.getUpdated());
+                hash = mix(hash, Double.doubleToLongBits(ship.getAcceleration()));
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        // murmur3 finalizer over the value, folded into the running hash
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return (hash ^ value) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+    }
+}
@@ -0,0 +1,280 @@
+package org.example.spacesim2d;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class TrajectoryReader implements AutoCloseable {
+    // reads a file written by TrajectoryRecorder frame by frame, seek jumps to the chunk holding a step
+    // through the index at the end of the file, or by scanning the chunk headers if the recording was cut off
+    // positions come back rounded to the recorder's quantum
+    private final Path path;
+    private final FileChannel channel;
+    private final Inflater inflater = new Inflater();
+    private final double quantum;
+    private long[] chunkSteps = new long[64];
+    private long[] chunkOffsets = new long[64];
+    private int chunkCount;
+
+    // decoding state of the current chunk
+    private int chunk = -1;
+    private byte[] compressed = new byte[0];
+    private byte[] data = new byte[0];
+    private int dataLength;
+    private int position;
+    private int framesLeft;
+    private int runLength;
+    private long[] q1 = new long[0];
+    private long[] q2 = new long[0];
+
+    // current frame
+    private boolean valid;
+    private long step;
+    private int size;
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+
+    public TrajectoryReader(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, 20);
+            if (header.getInt() != TrajectoryRecorder.MAGIC) {
+                throw new IOException(path + ": not a trajectory recording");
+            }
+            int version = header.getInt();
+            if (version != TrajectoryRecorder.VERSION) {
+                throw new IOException(path + ": unsupported trajectory version " + version);
+            }
+            quantum = header.getDouble();
+            if (!readIndex()) {
+                scanChunks();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public double getQuantum() {
+        return quantum;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public long getFirstStep() {
+        // step of the first recorded frame, or -1 if nothing was recorded
+        return chunkCount == 0 ? -1 : chunkSteps[0];
+    }
+
+    public boolean seek(long target) throws IOException {
+        // makes the first frame at or after the target step the current one, false if there is none
+        int index = Arrays.binarySearch(chunkSteps, 0, chunkCount, target);
+        if (index < 0) {
+            index = Math.max(-index - 2, 0);
+        }
+        if (index >= chunkCount) {
+            valid = false;
+            return false;
+        }
+        loadChunk(index);
+        while (next()) {
+            if (step >= target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean next() throws IOException {
+        // advances to the next frame, false at the end of the recording
+        if (chunk == -1) {
+            if (chunkCount == 0) {
+                return valid = false;
+            }
+            loadChunk(0);
+        }
+        while (framesLeft == 0) {
+            if (chunk + 1 >= chunkCount) {
+                return valid = false;
+            }
+            loadChunk(chunk + 1);
+        }
+        decodeFrame();
+        return valid = true;
+    }
+
+    public long getStep() {
+        checkValid();
+        return step;
+    }
+
+    public int size() {
+        checkValid();
+        return size;
+    }
+
+    public double getX(int i) {
+        checkValid();
+        return x[i];
+    }
+
+    public double getY(int i) {
+        checkValid();
+        return y[i];
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private void checkValid() {
+        if (!valid) {
+            throw new IllegalStateException("no current frame, call next or seek first");
+        }
+    }
+
+    private boolean readIndex() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < 36) {
+            return false;
+        }
+        ByteBuffer trailer = read(fileSize - 16, 16);
+        long indexOffset = trailer.getLong();
+        int count = trailer.getInt();
+        if (trailer.getInt() != TrajectoryRecorder.MAGIC || count < 0 || indexOffset + 16L * count != fileSize - 16) {
+            return false;
+        }
+        ByteBuffer index = read(indexOffset, 16 * count);
+        for (int k = 0; k < count; k++) {
+            addChunk(index.getLong(), index.getLong());
+        }
+        return true;
+    }
+
+    private void scanChunks() throws IOException {
+        // no index, the recording was not closed, take every complete chunk
+        long fileSize = channel.size();
+        long offset = 20;
+        while (offset + 16 <= fileSize) {
+            ByteBuffer header = read(offset, 16);
+            int length = header.getInt();
+            header.getInt();
+            long firstStep = header.getLong();
+            if (length < 0 || offset + 16 + length > fileSize) {
+                break;
+            }
+            addChunk(firstStep, offset);
+            offset += 16 + length;
+        }
+    }
+
+    private void addChunk(long firstStep, long offset) {
+        if (chunkCount == chunkSteps.length) {
+            chunkSteps = Arrays.copyOf(chunkSteps, chunkCount * 2);
+            chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount * 2);
+        }
+        chunkSteps[chunkCount] = firstStep;
+        chunkOffsets[chunkCount] = offset;
+        chunkCount++;
+    }
+
+    private void loadChunk(int index) throws IOException {
+        ByteBuffer header = read(chunkOffsets[index], 16);
+        int length = header.getInt();
+        int frames = header.getInt();
+        step = header.getLong();
+        if (compressed.length < length) {
+            compressed = new byte[length];
+        }
+        read(chunkOffsets[index] + 16, length).get(compressed, 0, length);
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        dataLength = 0;
+        try {
+            while (!inflater.finished()) {
+                if (dataLength == data.length) {
+                    data = Arrays.copyOf(data, Math.max(data.length * 2, 1 << 16));
+                }
+                int inflated = inflater.inflate(data, dataLength, data.length - dataLength);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException(path + ": chunk " + index + " is truncated");
+                }
+                dataLength += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(path + ": chunk " + index + " is corrupt", e);
+        }
+        chunk = index;
+        position = 0;
+        framesLeft = frames;
+        size = -1;
+    }
+
+    private void decodeFrame() throws IOException {
+        step += getVarLong();
+        int n = (int) getVarLong();
+        boolean key = getVarLong() != 0;
+        if (key) {
+            runLength = 0;
+        } else if (n != size) {
+            throw new IOException(path + ": object count changed without a key frame at step " + step);
+        }
+        if (x.length < n) {
+            x = new double[n];
+            y = new double[n];
+            q1 = new long[2 * n];
+            q2 = new long[2 * n];
+        }
+        for (int i = 0; i < n; i++) {
+            for (int axis = 0; axis < 2; axis++) {
+                int k = 2 * i + axis;
+                long q = TrajectoryRecorder.predict(runLength, q1[k], q2[k]) + TrajectoryRecorder.unzigzag(getVarLong());
+                q2[k] = q1[k];
+                q1[k] = q;
+                if (axis == 0) {
+                    x[i] = q * quantum;
+                } else {
+                    y[i] = q * quantum;
+                }
+            }
+        }
+        size = n;
+        runLength++;
+        framesLeft--;
+    }
+
+    private long getVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= dataLength) {
+                throw new IOException(path + ": frame runs past the end of chunk " + chunk);
+            }
+            byte b = data[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException(path + ": malformed varint in chunk " + chunk);
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException(path + ": unexpected end of file");
+            }
+        }
+        return buffer.flip();
+    }
+}
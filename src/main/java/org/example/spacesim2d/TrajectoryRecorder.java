@@ -0,0 +1,325 @@
+package org.example.spacesim2d;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+public class TrajectoryRecorder implements AutoCloseable {
+    // records object positions every interval steps to a compact file, off the physics thread
+    // the physics thread only copies the positions into a free frame of a small ring and hands it over,
+    // a writer thread quantizes them to multiples of quantum and encodes each coordinate as the difference
+    // to its linear prediction from the two frames before, as zigzag varints, so steady motion costs a byte or two
+    // frames are grouped into chunks that start with absolute positions and are deflated separately,
+    // an index of the chunks at the end of the file lets TrajectoryReader seek to any step
+    // when the writer falls behind by the whole ring, record blocks instead of dropping frames
+    // when the writer fails, record throws, or in quiet mode reports it once on stderr and drops the frames
+    // after it, so a recorder on a long running physics thread cannot take the simulation down with it
+    // file layout, big endian:
+    //   header   magic "SS2T", version, quantum, frames per chunk
+    //   chunks   compressed length, frame count, first step, deflated frames
+    //   index    first step and file offset of every chunk
+    //   trailer  index offset, chunk count, magic
+    // a frame is, as varints: step delta to the previous frame, object count, key frame flag,
+    // then the encoded x and y of every object
+    public static final int MAGIC = 0x53533254;
+    public static final int VERSION = 1;
+    // chunks are cut earlier than the frame count when they get this big, for very large scenes
+    private static final int MAX_CHUNK_BYTES = 8 << 20;
+
+    private final Path path;
+    private final int interval;
+    private final double quantum;
+    private final int chunkFrames;
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> filled;
+    private final Thread writer;
+    private volatile IOException failure;
+    private boolean closed;
+    private boolean quiet;
+    private boolean reported;
+    private long stalls;
+
+    // writer thread state
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] chunk = new byte[1 << 16];
+    private int chunkLength;
+    private byte[] compressed = new byte[1 << 16];
+    private int chunkFrameCount;
+    private long chunkFirstStep;
+    private long offset;
+    private long[] indexSteps = new long[64];
+    private long[] indexOffsets = new long[64];
+    private int chunkCount;
+    private long previousStep;
+    private int previousSize = -1;
+    // frames since the last key frame, and the quantized positions of the two frames before
+    private int runLength;
+    private long[] q1 = new long[0];
+    private long[] q2 = new long[0];
+
+    public TrajectoryRecorder(Path path, int interval, double quantum, int chunkFrames, int ringSize) throws IOException {
+        if (interval < 1 || chunkFrames < 1 || ringSize < 1 || !(quantum > 0)) {
+            throw new IllegalArgumentException("interval, chunk frames and ring size must be at least 1 and the quantum positive");
+        }
+        this.path = path;
+        this.interval = interval;
+        this.quantum = quantum;
+        this.chunkFrames = chunkFrames;
+        free = new ArrayBlockingQueue<>(ringSize);
+        // room for every frame, the end marker and the spare frames handed out after a failure
+        filled = new ArrayBlockingQueue<>(ringSize + 3);
+        for (int k = 0; k < ringSize; k++) {
+            free.add(new Frame());
+        }
+        OutputStream stream = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+        out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeDouble(quantum);
+        out.writeInt(chunkFrames);
+        offset = 20;
+        // the writer mostly waits for frames and the disk, a virtual thread does that without holding a platform thread
+        writer = Thread.ofVirtual().name("trajectory-writer").start(this::write);
+    }
+
+    public TrajectoryRecorder(Path path, int interval) throws IOException {
+        // a thousandth of a unit is far below a pixel, 64 frames per chunk keep seeks short
+        this(path, interval, 1e-3, 64, 8);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public boolean isQuiet() {
+        return quiet;
+    }
+
+    public void setQuiet(boolean quiet) {
+        // physics thread, or before the recorder is handed to it; close still throws the failure
+        this.quiet = quiet;
+    }
+
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    public long getStalls() {
+        // how often record had to wait for the writer
+        return stalls;
+    }
+
+    public void record(BodyStore bodies, long step) {
+        // physics thread, copies the positions if step is a multiple of the interval
+        if (step % interval != 0) {
+            return;
+        }
+        if (closed) {
+            throw new IllegalStateException("recorder is closed");
+        }
+        if (failure != null) {
+            if (!quiet) {
+                throw new UncheckedIOException("trajectory recording to " + path + " failed", failure);
+            }
+            if (!reported) {
+                reported = true;
+                System.err.println("trajectory recording to " + path + " failed, stopped recording: " + failure.getMessage());
+            }
+            return;
+        }
+        Frame frame = free.poll();
+        try {
+            if (frame == null) {
+                stalls++;
+                frame = free.take();
+            }
+            frame.set(bodies, step);
+            filled.put(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // waits for the writer to encode everything that was recorded and writes the index
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            filled.put(Frame.END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while closing " + path, e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void write() {
+        try (DataOutputStream out = this.out) {
+            while (true) {
+                Frame frame = filled.take();
+                if (frame == Frame.END) {
+                    break;
+                }
+                encode(frame);
+                free.add(frame);
+                if (chunkFrameCount == chunkFrames || chunkLength >= MAX_CHUNK_BYTES) {
+                    flushChunk();
+                }
+            }
+            flushChunk();
+            long indexOffset = offset;
+            for (int k = 0; k < chunkCount; k++) {
+                out.writeLong(indexSteps[k]);
+                out.writeLong(indexOffsets[k]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(chunkCount);
+            out.writeInt(MAGIC);
+        } catch (IOException e) {
+            failure = e;
+            // let a blocked physics thread through so it sees the failure
+            free.clear();
+            for (int k = 0; k < 2; k++) {
+                free.add(new Frame());
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("trajectory writer interrupted", e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void encode(Frame frame) {
+        int n = frame.size;
+        // a new chunk or a changed object count starts over with absolute positions
+        boolean key = chunkFrameCount == 0 || n != previousSize;
+        if (chunkFrameCount == 0) {
+            chunkFirstStep = frame.step;
+            previousStep = frame.step;
+        }
+        if (key) {
+            runLength = 0;
+            if (q1.length < 2 * n) {
+                q1 = new long[2 * n];
+                q2 = new long[2 * n];
+            }
+        }
+        ensureChunkCapacity(30 + 20L * n);
+        putVarLong(frame.step - previousStep);
+        putVarLong(n);
+        putVarLong(key ? 1 : 0);
+        for (int i = 0; i < n; i++) {
+            for (int axis = 0; axis < 2; axis++) {
+                int k = 2 * i + axis;
+                long q = Math.round((axis == 0 ? frame.x[i] : frame.y[i]) / quantum);
+                long predicted = predict(runLength, q1[k], q2[k]);
+                putVarLong(zigzag(q - predicted));
+                q2[k] = q1[k];
+                q1[k] = q;
+            }
+        }
+        previousStep = frame.step;
+        previousSize = n;
+        chunkFrameCount++;
+        runLength++;
+    }
+
+    static long predict(int runLength, long q1, long q2) {
+        // key frames are absolute, the second frame of a run repeats the first, later frames extrapolate linearly
+        return runLength == 0 ? 0 : runLength == 1 ? q1 : 2 * q1 - q2;
+    }
+
+    private void flushChunk() throws IOException {
+        if (chunkFrameCount == 0) {
+            return;
+        }
+        deflater.reset();
+        deflater.setInput(chunk, 0, chunkLength);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        if (chunkCount == indexSteps.length) {
+            indexSteps = Arrays.copyOf(indexSteps, chunkCount * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, chunkCount * 2);
+        }
+        indexSteps[chunkCount] = chunkFirstStep;
+        indexOffsets[chunkCount] = offset;
+        chunkCount++;
+        out.writeInt(compressedLength);
+        out.writeInt(chunkFrameCount);
+        out.writeLong(chunkFirstStep);
+        out.write(compressed, 0, compressedLength);
+        offset += 16 + compressedLength;
+        chunkLength = 0;
+        chunkFrameCount = 0;
+        // the next chunk starts with a key frame
+        previousSize = -1;
+    }
+
+    private void ensureChunkCapacity(long extra) {
+        if (chunkLength + extra > chunk.length) {
+            chunk = Arrays.copyOf(chunk, (int) Math.max(chunk.length * 2L, chunkLength + extra));
+        }
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            chunk[chunkLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        chunk[chunkLength++] = (byte) value;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Frame {
+        static final Frame END = new Frame();
+
+        long step;
+        int size;
+        double[] x = new double[0];
+        double[] y = new double[0];
+
+        void set(BodyStore bodies, long step) {
+            int n = bodies.size;
+            if (x.length < n) {
+                x = new double[Math.max(n, x.length * 2)];
+                y = new double[x.length];
+            }
+            System.arraycopy(bodies.x, 0, x, 0, n);
+            System.arraycopy(bodies.y, 0, y, 0, n);
+            this.step = step;
+            this.size = n;
+        }
+    }
+}
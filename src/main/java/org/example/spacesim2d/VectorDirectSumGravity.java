@@ -0,0 +1,269 @@
+package org.example.spacesim2d;
+
+import java.util.Objects;
+
+public class VectorDirectSumGravity implements GravitySolver {
+    // exact direct sum for mid-sized scenes, with the pair loop in SIMD lanes through the incubating Vector API
+    // the force is Plummer softened, G m1 m2 r / (r^2 + eps^2)^(3/2), which is the plain 1 / r^2 for eps = 0
+    // and keeps close passes from producing huge kicks for eps > 0; objects on the same spot pull each other
+    // nowhere instead of producing NaN
+    // the module is only there when the simulation runs on the module path or with
+    // --add-modules jdk.incubator.vector, otherwise the same tiled loops run in scalar code
+    // the SIMD lanes add up the pulls in a different order than DirectSumGravity, so results agree
+    // to rounding, not bitwise
+    // Precision.FLOAT is a float pair loop: it runs on float copies of the positions and masses with twice
+    // the lanes per vector, for dust fields where the last digits do not matter; float sums are moved into
+    // the double forces before they grow long (mixed precision), so the error stays near float rounding,
+    // about 1e-5 of the force, instead of growing with the object count
+    // the body store and everything outside the pair loop stay in double, so the copies add 12 bytes per
+    // object to the footprint rather than replacing anything; they only exist while the precision is FLOAT
+    private static final int TILE = 2048;
+    // objects whose pull a float tile accumulator collects before it is flushed
+    private static final int FLUSH_EVERY = 256;
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private FloatBodies floats;
+    private double softening;
+    private Precision precision;
+
+    public VectorDirectSumGravity(double softening, Precision precision) {
+        setSoftening(softening);
+        setPrecision(precision);
+    }
+
+    public VectorDirectSumGravity(double softening) {
+        this(softening, Precision.DOUBLE);
+    }
+
+    public VectorDirectSumGravity() {
+        this(0);
+    }
+
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    public static int lanes() {
+        return VECTORIZED ? VectorKernel.lanes() : 1;
+    }
+
+    public static int lanes(Precision precision) {
+        if (!VECTORIZED) {
+            return 1;
+        }
+        return precision == Precision.FLOAT ? VectorKernel.floatLanes() : VectorKernel.lanes();
+    }
+
+    public double getSoftening() {
+        return softening;
+    }
+
+    public void setSoftening(double softening) {
+        if (!(softening >= 0) || Double.isInfinite(softening)) {
+            throw new IllegalArgumentException("softening must be finite and non-negative: " + softening);
+        }
+        this.softening = softening;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(Precision precision) {
+        this.precision = Objects.requireNonNull(precision);
+        if (precision == Precision.DOUBLE) {
+            floats = null;
+        } else if (floats == null) {
+            floats = new FloatBodies();
+        }
+    }
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G) {
+        double softening2 = softening * softening;
+        if (precision == Precision.FLOAT) {
+            floats.load(bodies, TILE);
+            if (VECTORIZED) {
+                VectorKernel.applySymmetricFloat(floats, bodies, G, (float) softening2, TILE, FLUSH_EVERY);
+            } else {
+                applySymmetricFloat(bodies, G, (float) softening2);
+            }
+            return;
+        }
+        if (VECTORIZED) {
+            VectorKernel.applySymmetric(bodies, G, softening2, TILE);
+            return;
+        }
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        double[] mass = bodies.mass;
+        double periodX = bodies.periodX;
+        double periodY = bodies.periodY;
+        boolean periodic = periodX != 0;
+        for (int tileStart = 0; tileStart < n; tileStart += TILE) {
+            int tileEnd = Math.min(tileStart + TILE, n);
+            for (int i = 0; i < tileEnd - 1; i++) {
+                double x1 = x[i];
+                double y1 = y[i];
+                double gm1 = G * mass[i];
+                double ax = 0;
+                double ay = 0;
+                for (int j = Math.max(i + 1, tileStart); j < tileEnd; j++) {
+                    double dx = x[j] - x1;
+                    double dy = y[j] - y1;
+                    if (periodic) {
+                        // nearest image in a periodic box
+                        dx -= periodX * Math.rint(dx / periodX);
+                        dy -= periodY * Math.rint(dy / periodY);
+                    }
+                    double r2 = dx * dx + dy * dy + softening2;
+                    if (r2 == 0) {
+                        continue;
+                    }
+                    double w = mass[j] / (r2 * Math.sqrt(r2));
+                    ax += w * dx;
+                    ay += w * dy;
+                    fx[j] -= gm1 * w * dx;
+                    fy[j] -= gm1 * w * dy;
+                }
+                fx[i] += gm1 * ax;
+                fy[i] += gm1 * ay;
+            }
+        }
+    }
+
+    @Override
+    public void applyGravity(BodyStore bodies, double G, int[] active, int activeCount) {
+        double softening2 = softening * softening;
+        if (precision == Precision.FLOAT) {
+            floats.load(bodies, TILE);
+            for (int k = 0; k < activeCount; k++) {
+                if (VECTORIZED) {
+                    VectorKernel.applyRowFloat(floats, bodies, G, (float) softening2, TILE, active[k]);
+                } else {
+                    applyRowFloat(bodies, G, (float) softening2, active[k]);
+                }
+            }
+            return;
+        }
+        for (int k = 0; k < activeCount; k++) {
+            int i = active[k];
+            if (VECTORIZED) {
+                VectorKernel.applyRow(bodies, G, softening2, i);
+                continue;
+            }
+            int n = bodies.size;
+            double[] x = bodies.x;
+            double[] y = bodies.y;
+            double[] mass = bodies.mass;
+            double periodX = bodies.periodX;
+            double periodY = bodies.periodY;
+            boolean periodic = periodX != 0;
+            double ax = 0;
+            double ay = 0;
+            for (int j = 0; j < n; j++) {
+                double dx = x[j] - x[i];
+                double dy = y[j] - y[i];
+                if (periodic) {
+                    dx -= periodX * Math.rint(dx / periodX);
+                    dy -= periodY * Math.rint(dy / periodY);
+                }
+                double r2 = dx * dx + dy * dy + softening2;
+                if (r2 == 0) {
+                    continue;
+                }
+                double w = mass[j] / (r2 * Math.sqrt(r2));
+                ax += w * dx;
+                ay += w * dy;
+            }
+            bodies.fx[i] += G * mass[i] * ax;
+            bodies.fy[i] += G * mass[i] * ay;
+        }
+    }
+
+    private void applySymmetricFloat(BodyStore bodies, double G, float softening2) {
+        // the scalar form of VectorKernel.applySymmetricFloat
+        int n = floats.size;
+        float[] x = floats.x;
+        float[] y = floats.y;
+        float[] mass = floats.mass;
+        float[] tileFx = floats.tileFx;
+        float[] tileFy = floats.tileFy;
+        float periodX = floats.periodX;
+        float periodY = floats.periodY;
+        boolean periodic = periodX != 0;
+        for (int tileStart = 0; tileStart < n; tileStart += TILE) {
+            int tileEnd = Math.min(tileStart + TILE, n);
+            for (int i = 0; i < tileEnd - 1; i++) {
+                float x1 = x[i];
+                float y1 = y[i];
+                float m1 = mass[i];
+                float ax = 0;
+                float ay = 0;
+                for (int j = Math.max(i + 1, tileStart); j < tileEnd; j++) {
+                    float dx = x[j] - x1;
+                    float dy = y[j] - y1;
+                    if (periodic) {
+                        dx -= periodX * (float) Math.rint(dx / periodX);
+                        dy -= periodY * (float) Math.rint(dy / periodY);
+                    }
+                    float r2 = dx * dx + dy * dy + softening2;
+                    if (r2 == 0) {
+                        continue;
+                    }
+                    float w = mass[j] / (r2 * (float) Math.sqrt(r2));
+                    ax += w * dx;
+                    ay += w * dy;
+                    tileFx[j - tileStart] -= m1 * w * dx;
+                    tileFy[j - tileStart] -= m1 * w * dy;
+                }
+                double gm1 = G * bodies.mass[i];
+                bodies.fx[i] += gm1 * ax;
+                bodies.fy[i] += gm1 * ay;
+                if ((i + 1) % FLUSH_EVERY == 0) {
+                    floats.flush(bodies, G, tileStart, tileEnd);
+                }
+            }
+            floats.flush(bodies, G, tileStart, tileEnd);
+        }
+    }
+
+    private void applyRowFloat(BodyStore bodies, double G, float softening2, int i) {
+        // the scalar form of VectorKernel.applyRowFloat
+        int n = floats.size;
+        float[] x = floats.x;
+        float[] y = floats.y;
+        float[] mass = floats.mass;
+        float periodX = floats.periodX;
+        float periodY = floats.periodY;
+        boolean periodic = periodX != 0;
+        double ax = 0;
+        double ay = 0;
+        for (int tileStart = 0; tileStart < n; tileStart += TILE) {
+            float tileX = 0;
+            float tileY = 0;
+            for (int j = tileStart, tileEnd = Math.min(tileStart + TILE, n); j < tileEnd; j++) {
+                float dx = x[j] - x[i];
+                float dy = y[j] - y[i];
+                if (periodic) {
+                    dx -= periodX * (float) Math.rint(dx / periodX);
+                    dy -= periodY * (float) Math.rint(dy / periodY);
+                }
+                float r2 = dx * dx + dy * dy + softening2;
+                if (r2 == 0) {
+                    continue;
+                }
+                float w = mass[j] / (r2 * (float) Math.sqrt(r2));
+                tileX += w * dx;
+                tileY += w * dy;
+            }
+            ax += tileX;
+            ay += tileY;
+        }
+        bodies.fx[i] += G * bodies.mass[i] * ax;
+        bodies.fy[i] += G * bodies.mass[i] * ay;
+    }
+}
@@ -0,0 +1,295 @@
+package org.example.spacesim2d;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+final class VectorKernel {
+    // the SIMD pair loops of VectorDirectSumGravity, kept in their own class so nothing touches the incubator
+    // API unless the module is there; every lane works on one partner j of the object i
+    // pairs on the same spot (r^2 == 0, only without softening) are masked out instead of producing NaN
+    // the float loops read FloatBodies and fit twice the partners in a vector; every float sum covers at most
+    // a tile of partners per lane or flushEvery objects before it is added to the double forces
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    private VectorKernel() {
+    }
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    static int floatLanes() {
+        return FLOATS.length();
+    }
+
+    static void applySymmetric(BodyStore bodies, double G, double softening2, int tile) {
+        // every pair once, the pull on j is written back lane by lane; the partners are taken a tile at a time
+        // so their positions and forces stay in cache while every object before the tile end sweeps over it
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        double[] mass = bodies.mass;
+        double periodX = bodies.periodX;
+        double periodY = bodies.periodY;
+        boolean periodic = periodX != 0;
+        int lanes = SPECIES.length();
+        for (int tileStart = 0; tileStart < n; tileStart += tile) {
+            int tileEnd = Math.min(tileStart + tile, n);
+            for (int i = 0; i < tileEnd - 1; i++) {
+                int from = Math.max(i + 1, tileStart);
+                double x1 = x[i];
+                double y1 = y[i];
+                double gm1 = G * mass[i];
+                DoubleVector px = DoubleVector.broadcast(SPECIES, x1);
+                DoubleVector py = DoubleVector.broadcast(SPECIES, y1);
+                DoubleVector sumX = DoubleVector.zero(SPECIES);
+                DoubleVector sumY = DoubleVector.zero(SPECIES);
+                int j = from;
+                for (int bound = from + SPECIES.loopBound(tileEnd - from); j < bound; j += lanes) {
+                    DoubleVector dx = DoubleVector.fromArray(SPECIES, x, j).sub(px);
+                    DoubleVector dy = DoubleVector.fromArray(SPECIES, y, j).sub(py);
+                    if (periodic) {
+                        dx = nearestImage(dx, periodX);
+                        dy = nearestImage(dy, periodY);
+                    }
+                    DoubleVector w = weight(dx, dy, DoubleVector.fromArray(SPECIES, mass, j), softening2);
+                    sumX = dx.fma(w, sumX);
+                    sumY = dy.fma(w, sumY);
+                    DoubleVector pull = w.mul(gm1);
+                    DoubleVector.fromArray(SPECIES, fx, j).sub(dx.mul(pull)).intoArray(fx, j);
+                    DoubleVector.fromArray(SPECIES, fy, j).sub(dy.mul(pull)).intoArray(fy, j);
+                }
+                double ax = sumX.reduceLanes(VectorOperators.ADD);
+                double ay = sumY.reduceLanes(VectorOperators.ADD);
+                for (; j < tileEnd; j++) {
+                    double dx = x[j] - x1;
+                    double dy = y[j] - y1;
+                    if (periodic) {
+                        dx -= periodX * Math.rint(dx / periodX);
+                        dy -= periodY * Math.rint(dy / periodY);
+                    }
+                    double r2 = dx * dx + dy * dy + softening2;
+                    if (r2 == 0) {
+                        continue;
+                    }
+                    double w = mass[j] / (r2 * Math.sqrt(r2));
+                    ax += w * dx;
+                    ay += w * dy;
+                    fx[j] -= gm1 * w * dx;
+                    fy[j] -= gm1 * w * dy;
+                }
+                fx[i] += gm1 * ax;
+                fy[i] += gm1 * ay;
+            }
+        }
+    }
+
+    static void applyRow(BodyStore bodies, double G, double softening2, int i) {
+        // the pull of all objects on i alone, the object itself has dx = dy = 0 and adds nothing
+        int n = bodies.size;
+        double[] x = bodies.x;
+        double[] y = bodies.y;
+        double[] mass = bodies.mass;
+        double periodX = bodies.periodX;
+        double periodY = bodies.periodY;
+        boolean periodic = periodX != 0;
+        double x1 = x[i];
+        double y1 = y[i];
+        DoubleVector px = DoubleVector.broadcast(SPECIES, x1);
+        DoubleVector py = DoubleVector.broadcast(SPECIES, y1);
+        DoubleVector sumX = DoubleVector.zero(SPECIES);
+        DoubleVector sumY = DoubleVector.zero(SPECIES);
+        int j = 0;
+        for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, x, j).sub(px);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, y, j).sub(py);
+            if (periodic) {
+                dx = nearestImage(dx, periodX);
+                dy = nearestImage(dy, periodY);
+            }
+            DoubleVector w = weight(dx, dy, DoubleVector.fromArray(SPECIES, mass, j), softening2);
+            sumX = dx.fma(w, sumX);
+            sumY = dy.fma(w, sumY);
+        }
+        double ax = sumX.reduceLanes(VectorOperators.ADD);
+        double ay = sumY.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++) {
+            double dx = x[j] - x1;
+            double dy = y[j] - y1;
+            if (periodic) {
+                dx -= periodX * Math.rint(dx / periodX);
+                dy -= periodY * Math.rint(dy / periodY);
+            }
+            double r2 = dx * dx + dy * dy + softening2;
+            if (r2 == 0) {
+                continue;
+            }
+            double w = mass[j] / (r2 * Math.sqrt(r2));
+            ax += w * dx;
+            ay += w * dy;
+        }
+        double gm1 = G * mass[i];
+        bodies.fx[i] += gm1 * ax;
+        bodies.fy[i] += gm1 * ay;
+    }
+
+    static void applySymmetricFloat(FloatBodies floats, BodyStore bodies, double G, float softening2, int tile,
+                                    int flushEvery) {
+        // applySymmetric in float, the pull on the tile's partners collects in the float tile accumulators,
+        // which are flushed into the double forces every flushEvery objects and at the end of the tile
+        int n = floats.size;
+        float[] x = floats.x;
+        float[] y = floats.y;
+        float[] mass = floats.mass;
+        float[] tileFx = floats.tileFx;
+        float[] tileFy = floats.tileFy;
+        double[] fx = bodies.fx;
+        double[] fy = bodies.fy;
+        float periodX = floats.periodX;
+        float periodY = floats.periodY;
+        boolean periodic = periodX != 0;
+        int lanes = FLOATS.length();
+        for (int tileStart = 0; tileStart < n; tileStart += tile) {
+            int tileEnd = Math.min(tileStart + tile, n);
+            for (int i = 0; i < tileEnd - 1; i++) {
+                int from = Math.max(i + 1, tileStart);
+                float x1 = x[i];
+                float y1 = y[i];
+                float m1 = mass[i];
+                FloatVector px = FloatVector.broadcast(FLOATS, x1);
+                FloatVector py = FloatVector.broadcast(FLOATS, y1);
+                FloatVector sumX = FloatVector.zero(FLOATS);
+                FloatVector sumY = FloatVector.zero(FLOATS);
+                int j = from;
+                for (int bound = from + FLOATS.loopBound(tileEnd - from); j < bound; j += lanes) {
+                    FloatVector dx = FloatVector.fromArray(FLOATS, x, j).sub(px);
+                    FloatVector dy = FloatVector.fromArray(FLOATS, y, j).sub(py);
+                    if (periodic) {
+                        dx = nearestImage(dx, periodX);
+                        dy = nearestImage(dy, periodY);
+                    }
+                    FloatVector w = weight(dx, dy, FloatVector.fromArray(FLOATS, mass, j), softening2);
+                    sumX = dx.fma(w, sumX);
+                    sumY = dy.fma(w, sumY);
+                    FloatVector pull = w.mul(m1);
+                    int t = j - tileStart;
+                    FloatVector.fromArray(FLOATS, tileFx, t).sub(dx.mul(pull)).intoArray(tileFx, t);
+                    FloatVector.fromArray(FLOATS, tileFy, t).sub(dy.mul(pull)).intoArray(tileFy, t);
+                }
+                float ax = sumX.reduceLanes(VectorOperators.ADD);
+                float ay = sumY.reduceLanes(VectorOperators.ADD);
+                for (; j < tileEnd; j++) {
+                    float dx = x[j] - x1;
+                    float dy = y[j] - y1;
+                    if (periodic) {
+                        dx -= periodX * (float) Math.rint(dx / periodX);
+                        dy -= periodY * (float) Math.rint(dy / periodY);
+                    }
+                    float r2 = dx * dx + dy * dy + softening2;
+                    if (r2 == 0) {
+                        continue;
+                    }
+                    float w = mass[j] / (r2 * (float) Math.sqrt(r2));
+                    ax += w * dx;
+                    ay += w * dy;
+                    tileFx[j - tileStart] -= m1 * w * dx;
+                    tileFy[j - tileStart] -= m1 * w * dy;
+                }
+                double gm1 = G * bodies.mass[i];
+                fx[i] += gm1 * ax;
+                fy[i] += gm1 * ay;
+                if ((i + 1) % flushEvery == 0) {
+                    floats.flush(bodies, G, tileStart, tileEnd);
+                }
+            }
+            floats.flush(bodies, G, tileStart, tileEnd);
+        }
+    }
+
+    static void applyRowFloat(FloatBodies floats, BodyStore bodies, double G, float softening2, int tile, int i) {
+        // applyRow in float, summed a tile of partners at a time into double
+        int n = floats.size;
+        float[] x = floats.x;
+        float[] y = floats.y;
+        float[] mass = floats.mass;
+        float periodX = floats.periodX;
+        float periodY = floats.periodY;
+        boolean periodic = periodX != 0;
+        float x1 = x[i];
+        float y1 = y[i];
+        FloatVector px = FloatVector.broadcast(FLOATS, x1);
+        FloatVector py = FloatVector.broadcast(FLOATS, y1);
+        double ax = 0;
+        double ay = 0;
+        for (int tileStart = 0; tileStart < n; tileStart += tile) {
+            int tileEnd = Math.min(tileStart + tile, n);
+            FloatVector sumX = FloatVector.zero(FLOATS);
+            FloatVector sumY = FloatVector.zero(FLOATS);
+            int j = tileStart;
+            for (int bound = tileStart + FLOATS.loopBound(tileEnd - tileStart); j < bound; j += FLOATS.length()) {
+                FloatVector dx = FloatVector.fromArray(FLOATS, x, j).sub(px);
+                FloatVector dy = FloatVector.fromArray(FLOATS, y, j).sub(py);
+                if (periodic) {
+                    dx = nearestImage(dx, periodX);
+                    dy = nearestImage(dy, periodY);
+                }
+                FloatVector w = weight(dx, dy, FloatVector.fromArray(FLOATS, mass, j), softening2);
+                sumX = dx.fma(w, sumX);
+                sumY = dy.fma(w, sumY);
+            }
+            float tileX = sumX.reduceLanes(VectorOperators.ADD);
+            float tileY = sumY.reduceLanes(VectorOperators.ADD);
+            for (; j < tileEnd; j++) {
+                float dx = x[j] - x1;
+                float dy = y[j] - y1;
+                if (periodic) {
+                    dx -= periodX * (float) Math.rint(dx / periodX);
+                    dy -= periodY * (float) Math.rint(dy / periodY);
+                }
+                float r2 = dx * dx + dy * dy + softening2;
+                if (r2 == 0) {
+                    continue;
+                }
+                float w = mass[j] / (r2 * (float) Math.sqrt(r2));
+                tileX += w * dx;
+                tileY += w * dy;
+            }
+            ax += tileX;
+            ay += tileY;
+        }
+        double gm1 = G * bodies.mass[i];
+        bodies.fx[i] += gm1 * ax;
+        bodies.fy[i] += gm1 * ay;
+    }
+
+    private static DoubleVector weight(DoubleVector dx, DoubleVector dy, DoubleVector mass, double softening2) {
+        // m / (r^2 + eps^2)^(3/2), times dx and dy this is the pull per unit G m1
+        DoubleVector r2 = dx.fma(dx, dy.mul(dy)).add(softening2);
+        VectorMask<Double> same = r2.compare(VectorOperators.EQ, 0);
+        return mass.div(r2.mul(r2.lanewise(VectorOperators.SQRT))).blend(0, same);
+    }
+
+    private static DoubleVector nearestImage(DoubleVector d, double period) {
+        // the integrator keeps objects within a step of the box, so one shift either way reaches the
+        // nearest image; this is rint without a lanewise rounding op
+        d = d.sub(period, d.compare(VectorOperators.GT, period / 2));
+        return d.add(period, d.compare(VectorOperators.LT, -period / 2));
+    }
+
+    private static FloatVector weight(FloatVector dx, FloatVector dy, FloatVector mass, float softening2) {
+        FloatVector r2 = dx.fma(dx, dy.mul(dy)).add(softening2);
+        VectorMask<Float> same = r2.compare(VectorOperators.EQ, 0);
+        return mass.div(r2.mul(r2.lanewise(VectorOperators.SQRT))).blend(0, same);
+    }
+
+    private static FloatVector nearestImage(FloatVector d, float period) {
+        d = d.sub(period, d.compare(VectorOperators.GT, period / 2));
+        return d.add(period, d.compare(VectorOperators.LT, -period / 2));
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.spacesim2d;
+
+import java.util.Arrays;
+
+final class ForceErrors {
+    // forces of a solver on a scene and their errors against a reference, for the solver accuracy tests
+
+    private ForceErrors() {
+    }
+
+    static double[][] forces(GravitySolver solver, BodyStore bodies, double G) {
+        Arrays.fill(bodies.fx, 0, bodies.size, 0);
+        Arrays.fill(bodies.fy, 0, bodies.size, 0);
+        solver.applyGravity(bodies, G);
+        return new double[][] {Arrays.copyOf(bodies.fx, bodies.size), Arrays.copyOf(bodies.fy, bodies.size)};
+    }
+
+    static double[][] forces(GravitySolver solver, BodyStore bodies, double G, int[] active) {
+        Arrays.fill(bodies.fx, 0, bodies.size, 0);
+        Arrays.fill(bodies.fy, 0, bodies.size, 0);
+        solver.applyGravity(bodies, G, active, active.length);
+        return new double[][] {Arrays.copyOf(bodies.fx, bodies.size), Arrays.copyOf(bodies.fy, bodies.size)};
+    }
+
+    static double[] relative(double[][] expected, double[][] actual, int[] objects) {
+        // |F - F_ref| / |F_ref| of each listed object, sorted
+        double[] errors = new double[objects.length];
+        for (int k = 0; k < objects.length; k++) {
+            int i = objects[k];
+            double ex = expected[0][i];
+            double ey = expected[1][i];
+            errors[k] = Math.hypot(actual[0][i] - ex, actual[1][i] - ey) / Math.hypot(ex, ey);
+        }
+        Arrays.sort(errors);
+        return errors;
+    }
+
+    static double[] relative(double[][] expected, double[][] actual) {
+        return relative(expected, actual, all(expected[0].length));
+    }
+
+    static double normalized(double[][] expected, double[][] actual) {
+        // sum of |F - F_ref| over the sum of |F_ref|, which objects whose pulls nearly cancel do not dominate
+        double error = 0;
+        double force = 0;
+        for (int i = 0; i < expected[0].length; i++) {
+            error += Math.hypot(actual[0][i] - expected[0][i], actual[1][i] - expected[1][i]);
+            force += Math.hypot(expected[0][i], expected[1][i]);
+        }
+        return error / force;
+    }
+
+    static double mean(double[] errors) {
+        double sum = 0;
+        for (double error : errors) {
+            sum += error;
+        }
+        return sum / errors.length;
+    }
+
+    static double percentile(double[] sorted, double fraction) {
+        return sorted[Math.min((int) (sorted.length * fraction), sorted.length - 1)];
+    }
+
+    static int[] all(int n) {
+        int[] objects = new int[n];
+        for (int i = 0; i < n; i++) {
+            objects[i] = i;
+        }
+        return objects;
+    }
+
+    static int[] everyNth(int n, int stride) {
+        int[] objects = new int[(n + stride - 1) / stride];
+        for (int k = 0; k < objects.length; k++) {
+            objects[k] = k * stride;
+        }
+        return objects;
+    }
+}
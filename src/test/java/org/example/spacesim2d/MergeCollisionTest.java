@@ -0,0 +1,97 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class MergeCollisionTest {
+    // a crowded scene without gravity or walls, so only the merges change mass, momentum and area;
+    // merging keeps all three, the area because the merged radius is taken from the summed areas
+    private static final int OBJECTS = 500;
+    private static final int SIZE = 200;
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    void mergesConserveMassMomentumAndArea() {
+        assertConserved(false);
+    }
+
+    @Test
+    void sweptMergesConserveMassMomentumAndArea() {
+        assertConserved(true);
+    }
+
+    @Test
+    void absorbedHandlesAreDeadInsteadOfShared() {
+        List<SpaceObject> objects = scene();
+        Simulation simulation = simulation(objects, false);
+        simulation.update(1);
+        int discarded = 0;
+        for (SpaceObject object : objects) {
+            if (object.isDiscarded()) {
+                discarded++;
+                assertThrows(IllegalStateException.class, object::getX);
+                assertThrows(IllegalStateException.class, () -> object.setVx(1));
+                assertThrows(IllegalStateException.class, () -> simulation.add(object));
+            }
+        }
+        assertEquals(simulation.getMerges(), discarded);
+        assertEquals(OBJECTS - discarded, simulation.getBodies().size());
+        for (int i = 0; i < simulation.getBodies().size(); i++) {
+            assertFalse(simulation.getBodies().get(i).isDiscarded());
+        }
+    }
+
+    private static void assertConserved(boolean swept) {
+        Simulation simulation = simulation(scene(), swept);
+        double[] before = totals(simulation.getBodies());
+        simulation.update(1);
+        double[] after = totals(simulation.getBodies());
+        assertTrue(simulation.getMerges() > 0, "nothing merged");
+        assertEquals(before[0], after[0], TOLERANCE * before[0], "mass");
+        assertEquals(before[1], after[1], TOLERANCE * before[4], "momentum x");
+        assertEquals(before[2], after[2], TOLERANCE * before[4], "momentum y");
+        assertEquals(before[3], after[3], TOLERANCE * before[3], "area");
+    }
+
+    private static List<SpaceObject> scene() {
+        Random random = new Random(31);
+        List<SpaceObject> objects = new ArrayList<>();
+        for (int i = 0; i < OBJECTS; i++) {
+            double radius = 1 + 3 * random.nextDouble();
+            double density = 0.5 + random.nextDouble();
+            objects.add(new SpaceObject(radius, density, SIZE * random.nextDouble(), SIZE * random.nextDouble(),
+                    random.nextGaussian(), random.nextGaussian()));
+        }
+        return objects;
+    }
+
+    private static Simulation simulation(List<SpaceObject> objects, boolean swept) {
+        Simulation simulation = new Simulation(objects, SIZE, SIZE);
+        simulation.setG(0);
+        simulation.setBoundaryMode(BoundaryMode.OPEN);
+        simulation.setCollisionMode(CollisionMode.MERGE);
+        simulation.setContinuousCollisions(swept);
+        return simulation;
+    }
+
+    private static double[] totals(BodyStore bodies) {
+        // mass, momentum x and y, area, and the sum of |momentum| as the scale of the momentum error
+        double[] totals = new double[5];
+        for (int i = 0; i < bodies.size; i++) {
+            double m = bodies.mass[i];
+            totals[0] += m;
+            totals[1] += m * bodies.vx[i];
+            totals[2] += m * bodies.vy[i];
+            totals[3] += Math.PI * bodies.radius[i] * bodies.radius[i];
+            totals[4] += m * Math.hypot(bodies.vx[i], bodies.vy[i]);
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class ParallelDirectSumGravityTest {
+    // every row is summed in index order by one thread, so the forces may not depend on the run or the
+    // thread count, bit for bit; against DirectSumGravity, which sums each pair once for both objects,
+    // they only agree to rounding
+    private static final int OBJECTS = 2000;
+    private static final long SEED = 23;
+    private static final int[] THREADS = {1, 2, 4, 7};
+    private static final int STEPS = 50;
+
+    @Test
+    void forcesAreBitwiseTheSameForEveryRunAndThreadCount() {
+        for (BoundaryMode boundary : new BoundaryMode[] {BoundaryMode.OPEN, BoundaryMode.PERIODIC}) {
+            BodyStore bodies = scene(boundary);
+            double[][] reference = null;
+            for (int threads : THREADS) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    for (int run = 0; run < 2; run++) {
+                        double[][] forces = ForceErrors.forces(new ParallelDirectSumGravity(pool), bodies, 1);
+                        if (reference == null) {
+                            reference = forces;
+                        }
+                        assertArrayEquals(reference[0], forces[0], boundary + ", " + threads + " threads, run " + run);
+                        assertArrayEquals(reference[1], forces[1], boundary + ", " + threads + " threads, run " + run);
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    @Test
+    void activeRowsAreBitwiseTheFullPassRows() {
+        BodyStore bodies = scene(BoundaryMode.OPEN);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelDirectSumGravity solver = new ParallelDirectSumGravity(pool);
+            double[][] full = ForceErrors.forces(solver, bodies, 1);
+            int[] active = ForceErrors.everyNth(bodies.size, 3);
+            double[][] rows = ForceErrors.forces(solver, bodies, 1, active);
+            for (int i : active) {
+                assertEquals(full[0][i], rows[0][i], "fx of " + i);
+                assertEquals(full[1][i], rows[1][i], "fy of " + i);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void forcesMatchTheDirectSumToRounding() {
+        BodyStore bodies = scene(BoundaryMode.OPEN);
+        double[][] expected = ForceErrors.forces(new DirectSumGravity(), bodies, 1);
+        double[][] actual = ForceErrors.forces(new ParallelDirectSumGravity(), bodies, 1);
+        double error = ForceErrors.normalized(expected, actual);
+        assertTrue(error < 1e-12, "normalized force error " + error);
+    }
+
+    @Test
+    void steppedRunsHashTheSameForAFixedThreadCount() {
+        assertEquals(steppedHash(4), steppedHash(4));
+    }
+
+    private static long steppedHash(int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Simulation simulation = ScenarioGenerator.PLUMMER.create(OBJECTS, SEED, 1400, 800);
+            simulation.setGravitySolver(new ParallelDirectSumGravity(pool));
+            for (int k = 0; k < STEPS; k++) {
+                simulation.update(1);
+            }
+            return StateHash.of(simulation);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static BodyStore scene(BoundaryMode boundary) {
+        Simulation simulation = ScenarioGenerator.PLUMMER.create(OBJECTS, SEED, 1400, 800);
+        simulation.setBoundaryMode(boundary);
+        return simulation.getBodies();
+    }
+}
@@ -0,0 +1,127 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ParticleMeshGravityTest {
+    // the mesh solvers against the direct sum on seeded scenes; plain PM smooths every pair closer than a few
+    // cells, so it is held to the pull between two distant clusters, while P3M adds the near pairs back and is
+    // held to the normalized error of every object
+    private static final int OBJECTS = 3000;
+    private static final long SEED = 5;
+    private static final int WIDTH = 1400;
+    private static final int HEIGHT = 800;
+    private static final double CELL = 8;
+    // the P3M normalized error measured between 0.3% and 0.8%
+    private static final double NORMALIZED_BOUND = 0.02;
+    // two clusters of CLUSTER objects, CLUSTER_RADIUS wide, 600 apart; the pull on one of them measured about
+    // 1e-5 off the direct sum in the open and 6e-4 in a periodic box, where the images come through the mesh
+    private static final int CLUSTER = 500;
+    private static final double CLUSTER_RADIUS = 60;
+    private static final long CLUSTER_SEED = 9;
+    private static final double OPEN_PULL_BOUND = 1e-3;
+    private static final double PERIODIC_PULL_BOUND = 2e-3;
+    // a mesh force is a sum of pairwise equal and opposite pulls only up to rounding
+    private static final double MOMENTUM_BOUND = 1e-12;
+    private static final int ACTIVE_STRIDE = 10;
+
+    @Test
+    void pullBetweenDistantClustersMatchesTheDirectSum() {
+        for (boolean shortRange : new boolean[] {false, true}) {
+            assertPullBounded(BoundaryMode.OPEN, shortRange, OPEN_PULL_BOUND);
+            assertPullBounded(BoundaryMode.PERIODIC, shortRange, PERIODIC_PULL_BOUND);
+        }
+    }
+
+    @Test
+    void meshForcesConserveMomentum() {
+        for (BoundaryMode boundary : new BoundaryMode[] {BoundaryMode.OPEN, BoundaryMode.PERIODIC}) {
+            for (boolean shortRange : new boolean[] {false, true}) {
+                BodyStore bodies = scene(ScenarioGenerator.UNIFORM, boundary);
+                double[][] forces = ForceErrors.forces(mesh(shortRange), bodies, 1);
+                double totalX = 0;
+                double totalY = 0;
+                double magnitude = 0;
+                for (int i = 0; i < bodies.size; i++) {
+                    totalX += forces[0][i];
+                    totalY += forces[1][i];
+                    magnitude += Math.hypot(forces[0][i], forces[1][i]);
+                }
+                double net = Math.hypot(totalX, totalY) / magnitude;
+                assertTrue(net < MOMENTUM_BOUND, boundary + " short range " + shortRange + ": net force " + net);
+            }
+        }
+    }
+
+    @Test
+    void shortRangeCorrectionKeepsTheNormalizedErrorBounded() {
+        for (ScenarioGenerator generator : new ScenarioGenerator[] {ScenarioGenerator.PLUMMER, ScenarioGenerator.UNIFORM}) {
+            for (BoundaryMode boundary : new BoundaryMode[] {BoundaryMode.OPEN, BoundaryMode.PERIODIC}) {
+                BodyStore bodies = scene(generator, boundary);
+                double[][] expected = ForceErrors.forces(new DirectSumGravity(), bodies, 1);
+                double[][] actual = ForceErrors.forces(mesh(true), bodies, 1);
+                double error = ForceErrors.normalized(expected, actual);
+                assertTrue(error < NORMALIZED_BOUND, generator + " " + boundary + ": normalized force error " + error);
+            }
+        }
+    }
+
+    @Test
+    void activeRowsOnAnUnchangedMeshMatchTheFullPass() {
+        // the second call finds the store unchanged and reads the forces off the mesh it already solved
+        for (boolean shortRange : new boolean[] {false, true}) {
+            BodyStore bodies = scene(ScenarioGenerator.PLUMMER, BoundaryMode.PERIODIC);
+            ParticleMeshGravity mesh = mesh(shortRange);
+            double[][] full = ForceErrors.forces(mesh, bodies, 1);
+            int[] active = ForceErrors.everyNth(bodies.size, ACTIVE_STRIDE);
+            double[][] rows = ForceErrors.forces(mesh, bodies, 1, active);
+            for (int i : active) {
+                assertTrue(full[0][i] == rows[0][i] && full[1][i] == rows[1][i], "short range " + shortRange + ": object " + i);
+            }
+        }
+    }
+
+    private static ParticleMeshGravity mesh(boolean shortRange) {
+        return ParticleMeshGravity.forArea(WIDTH, HEIGHT, CELL, shortRange, null);
+    }
+
+    private static BodyStore scene(ScenarioGenerator generator, BoundaryMode boundary) {
+        Simulation simulation = generator.create(OBJECTS, SEED, WIDTH, HEIGHT);
+        simulation.setBoundaryMode(boundary);
+        return simulation.getBodies();
+    }
+
+    private static void assertPullBounded(BoundaryMode boundary, boolean shortRange, double bound) {
+        // the first CLUSTER objects make up cluster A; its net force is the pull of cluster B and its images
+        Random random = new Random(CLUSTER_SEED);
+        List<SpaceObject> objects = new ArrayList<>();
+        for (double centreX : new double[] {400, 1000}) {
+            for (int k = 0; k < CLUSTER; k++) {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double radius = CLUSTER_RADIUS * Math.sqrt(random.nextDouble());
+                objects.add(new SpaceObject(0.5, 1, centreX + radius * Math.cos(angle), 400 + radius * Math.sin(angle)));
+            }
+        }
+        Simulation simulation = new Simulation(objects, WIDTH, HEIGHT);
+        simulation.setBoundaryMode(boundary);
+        BodyStore bodies = simulation.getBodies();
+        double[] expected = pullOnFirstCluster(ForceErrors.forces(new DirectSumGravity(), bodies, 1));
+        double[] actual = pullOnFirstCluster(ForceErrors.forces(mesh(shortRange), bodies, 1));
+        double error = Math.hypot(actual[0] - expected[0], actual[1] - expected[1]) / Math.hypot(expected[0], expected[1]);
+        assertTrue(error < bound, boundary + " short range " + shortRange + ": relative pull error " + error);
+    }
+
+    private static double[] pullOnFirstCluster(double[][] forces) {
+        double x = 0;
+        double y = 0;
+        for (int i = 0; i < CLUSTER; i++) {
+            x += forces[0][i];
+            y += forces[1][i];
+        }
+        return new double[] {x, y};
+    }
+}
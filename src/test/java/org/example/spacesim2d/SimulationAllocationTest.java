@@ -0,0 +1,55 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class SimulationAllocationTest {
+    // a warmed-up step allocates nothing: the allocation counter of the stepping thread stays flat
+    private static final int OBJECTS = 500;
+    private static final int WARMUP_STEPS = 2000;
+    private static final int MEASURED_STEPS = 500;
+    private static final int WINDOWS = 3;
+
+    @Test
+    void directSumStepAllocatesNothing() {
+        assertStepsAllocateNothing(DirectSumGravity::new);
+    }
+
+    @Test
+    void barnesHutStepAllocatesNothing() {
+        assertStepsAllocateNothing(() -> new BarnesHutGravity(0.5, null));
+    }
+
+    private static void assertStepsAllocateNothing(Supplier<GravitySolver> solver) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(),
+                "the JVM does not count allocated bytes per thread");
+        for (Integrator integrator : new Integrator[] {Integrator.EULER, Integrator.LEAPFROG}) {
+            Simulation simulation = ScenarioGenerator.UNIFORM.create(OBJECTS, 42, 1400, 800);
+            simulation.setGravitySolver(solver.get());
+            simulation.setIntegrator(integrator);
+            simulation.applyForces();
+            for (int i = 0; i < WARMUP_STEPS; i++) {
+                simulation.update(1);
+            }
+            // a late JIT deoptimization can materialize a few scalar-replaced objects once, so a window may be
+            // retried; an allocation in the step itself shows up in every window
+            long allocated = 0;
+            for (int window = 0; window < WINDOWS; window++) {
+                long before = threads.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < MEASURED_STEPS; i++) {
+                    simulation.update(1);
+                }
+                allocated = threads.getCurrentThreadAllocatedBytes() - before;
+                if (allocated == 0) {
+                    break;
+                }
+            }
+            assertEquals(0, allocated, integrator + " allocated " + allocated + " bytes over " + MEASURED_STEPS + " steps");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class SimulationSchedulerTest {
+    private static final double STEPS_PER_SECOND = 1000;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    void failedCommandIsReportedAndTheStepsGoOn() throws Exception {
+        SimulationScheduler scheduler = new SimulationScheduler(ScenarioGenerator.UNIFORM.create(50, 1, 400, 400), STEPS_PER_SECOND);
+        CompletableFuture<Throwable> reported = new CompletableFuture<>();
+        scheduler.setFailureHandler(reported::complete);
+        IllegalStateException thrown = new IllegalStateException("bad command");
+        scheduler.start();
+        try {
+            scheduler.submit(simulation -> {
+                throw thrown;
+            });
+            assertSame(thrown, reported.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            int step = scheduler.call(Simulation::getStep).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (scheduler.call(Simulation::getStep).get(TIMEOUT_SECONDS, TimeUnit.SECONDS) == step) {
+                assertTrue(System.nanoTime() < deadline, "no step after the failed command");
+                Thread.sleep(1);
+            }
+            assertTrue(scheduler.isRunning());
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    void failedStepIsReportedAndStopsTheScheduler() throws Exception {
+        SimulationScheduler scheduler = new SimulationScheduler(ScenarioGenerator.UNIFORM.create(50, 1, 400, 400), STEPS_PER_SECOND);
+        CompletableFuture<Boolean> runningWhenReported = new CompletableFuture<>();
+        CompletableFuture<Throwable> reported = new CompletableFuture<>();
+        scheduler.setFailureHandler(e -> {
+            runningWhenReported.complete(scheduler.isRunning());
+            reported.complete(e);
+        });
+        ArithmeticException thrown = new ArithmeticException("bad step");
+        scheduler.start();
+        try {
+            scheduler.submit(running -> running.setGravitySolver((bodies, G) -> {
+                throw thrown;
+            }));
+            assertSame(thrown, reported.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertFalse(runningWhenReported.get());
+            assertFalse(scheduler.isRunning());
+        } finally {
+            scheduler.stop();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotIOTest {
+    // the names section starts right after the 40 byte fixed header with the length of the first name
+    private static final int FIRST_NAME_LENGTH = 40;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripKeepsTheState() throws IOException {
+        Simulation simulation = ScenarioGenerator.KEPLER_DISK.create(100, 7, 1400, 800);
+        Path path = directory.resolve("run.snap");
+        SnapshotIO.write(path, simulation);
+        assertEquals(StateHash.of(simulation), StateHash.of(SnapshotIO.read(path)));
+    }
+
+    @Test
+    void negativeNameLengthIsACorruptSnapshot() throws IOException {
+        assertCorruptNameLength(-5);
+    }
+
+    @Test
+    void nameLengthPastTheEndIsACorruptSnapshot() throws IOException {
+        assertCorruptNameLength(Integer.MAX_VALUE);
+    }
+
+    private void assertCorruptNameLength(int length) throws IOException {
+        Path path = directory.resolve("corrupt.snap");
+        SnapshotIO.write(path, ScenarioGenerator.UNIFORM.create(10, 1, 1400, 800));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(FIRST_NAME_LENGTH);
+            file.writeInt(Integer.reverseBytes(length));
+        }
+        IOException e = assertThrows(IOException.class, () -> SnapshotIO.read(path));
+        assertTrue(e.getMessage().contains("corrupt snapshot: name length " + length), e.getMessage());
+    }
+}
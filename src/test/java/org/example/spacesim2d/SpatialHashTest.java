@@ -0,0 +1,116 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class SpatialHashTest {
+    // the broad phase against a brute force pass over every pair: each touching pair has to be a candidate,
+    // and no candidate may be reported twice; crowded, so many objects touch, some of them through the seam
+    private static final int OBJECTS = 600;
+    private static final int SIZE = 200;
+    private static final int QUERIES = 3000;
+
+    @Test
+    void findPairsCoversEveryTouchingPair() {
+        assertCoversTouchingPairs(scene(BoundaryMode.REFLECTIVE));
+    }
+
+    @Test
+    void findPairsCoversPairsTouchingThroughTheSeam() {
+        assertCoversTouchingPairs(scene(BoundaryMode.PERIODIC));
+    }
+
+    @Test
+    void pointAndRangeQueriesSeeAcrossTheSeam() {
+        // query points all over the box, a third of them within a few units of an edge
+        BodyStore bodies = scene(BoundaryMode.PERIODIC);
+        SpatialHash hash = new SpatialHash();
+        hash.rebuild(bodies);
+        Random random = new Random(29);
+        int[] out = new int[OBJECTS];
+        int acrossSeam = 0;
+        for (int query = 0; query < QUERIES; query++) {
+            double x = query % 3 == 0 ? 3 * random.nextDouble() : SIZE * random.nextDouble();
+            double y = query % 3 == 1 ? SIZE - 3 * random.nextDouble() : SIZE * random.nextDouble();
+            double range = 10 * random.nextDouble();
+            int expectedAt = -1;
+            Set<Integer> expectedInRange = new HashSet<>();
+            for (int i = 0; i < bodies.size; i++) {
+                double dx = bodies.separationX(bodies.x[i] - x);
+                double dy = bodies.separationY(bodies.y[i] - y);
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                if (distance < bodies.radius[i] && expectedAt == -1) {
+                    expectedAt = i;
+                    if (dx != bodies.x[i] - x || dy != bodies.y[i] - y) {
+                        acrossSeam++;
+                    }
+                }
+                if (distance < range + bodies.radius[i]) {
+                    expectedInRange.add(i);
+                }
+            }
+            assertEquals(expectedAt, hash.findAt(bodies, x, y), "object at " + x + ", " + y);
+            int count = hash.findInRange(bodies, x, y, range, out);
+            Set<Integer> inRange = new HashSet<>();
+            for (int k = 0; k < count; k++) {
+                assertTrue(inRange.add(out[k]), "object " + out[k] + " found twice");
+            }
+            assertEquals(expectedInRange, inRange, "objects within " + range + " of " + x + ", " + y);
+        }
+        assertTrue(acrossSeam > 0, "no query hit an object through the seam");
+    }
+
+    private static BodyStore scene(BoundaryMode boundary) {
+        Random random = new Random(17);
+        List<SpaceObject> objects = new ArrayList<>();
+        for (int i = 0; i < OBJECTS; i++) {
+            double radius = 1 + 5 * random.nextDouble();
+            objects.add(new SpaceObject(radius, 1, SIZE * random.nextDouble(), SIZE * random.nextDouble()));
+        }
+        Simulation simulation = new Simulation(objects, SIZE, SIZE);
+        simulation.setBoundaryMode(boundary);
+        return simulation.getBodies();
+    }
+
+    private static void assertCoversTouchingPairs(BodyStore bodies) {
+        SpatialHash hash = new SpatialHash();
+        hash.rebuild(bodies);
+        int count = hash.findPairs();
+        int[] pairs = hash.getPairs();
+        Set<Long> candidates = new HashSet<>();
+        for (int k = 0; k < count; k++) {
+            int a = Math.min(pairs[2 * k], pairs[2 * k + 1]);
+            int b = Math.max(pairs[2 * k], pairs[2 * k + 1]);
+            assertTrue(a != b, "object " + a + " paired with itself");
+            assertTrue(candidates.add((long) a * OBJECTS + b), "pair " + a + ", " + b + " reported twice");
+        }
+        int touching = 0;
+        int throughSeam = 0;
+        for (int i = 0; i < bodies.size; i++) {
+            for (int j = i + 1; j < bodies.size; j++) {
+                double dx = bodies.separationX(bodies.x[j] - bodies.x[i]);
+                double dy = bodies.separationY(bodies.y[j] - bodies.y[i]);
+                if (Math.sqrt(dx * dx + dy * dy) < bodies.radius[i] + bodies.radius[j]) {
+                    touching++;
+                    if (dx != bodies.x[j] - bodies.x[i] || dy != bodies.y[j] - bodies.y[i]) {
+                        throughSeam++;
+                    }
+                    assertTrue(candidates.contains((long) i * OBJECTS + j), "touching pair " + i + ", " + j + " missed");
+                }
+            }
+        }
+        assertTrue(touching > 0, "the scene has no touching pairs");
+        if (bodies.periodX != 0) {
+            assertTrue(throughSeam > 0, "no pair touches through the seam");
+        } else {
+            assertEquals(0, throughSeam);
+        }
+    }
+}
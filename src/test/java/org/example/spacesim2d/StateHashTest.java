@@ -0,0 +1,40 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+class StateHashTest {
+    // a verifier only reports a divergence at the step it happens if every state the next step reads is hashed
+
+    @Test
+    void sameRunsHashTheSame() {
+        assertEquals(StateHash.of(stepped()), StateHash.of(stepped()));
+    }
+
+    @Test
+    void forcesAreHashed() {
+        Simulation simulation = stepped();
+        long before = StateHash.of(simulation);
+        simulation.getBodies().fx[3] = Math.nextUp(simulation.getBodies().fx[3]);
+        assertNotEquals(before, StateHash.of(simulation));
+    }
+
+    @Test
+    void shipControlsAreHashed() {
+        Simulation simulation = stepped();
+        long before = StateHash.of(simulation);
+        simulation.getShip().setMouse(700, 400);
+        assertNotEquals(before, StateHash.of(simulation));
+    }
+
+    private static Simulation stepped() {
+        Simulation simulation = ScenarioGenerator.UNIFORM.create(200, 13, 1400, 800);
+        simulation.add(new Ship(10, 1, 300, 300, 0, 0, 0, 1400, 800));
+        for (int k = 0; k < 20; k++) {
+            simulation.update(1);
+        }
+        return simulation;
+    }
+}
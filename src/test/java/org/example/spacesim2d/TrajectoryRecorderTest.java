@@ -0,0 +1,55 @@
+package org.example.spacesim2d;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+class TrajectoryRecorderTest {
+    // every write to /dev/full fails with "no space left on device", once the buffered header and the first
+    // chunks no longer fit in the stream's buffer
+    private static final Path FULL = Path.of("/dev/full");
+    private static final int MAX_STEPS = 1000;
+
+    @Test
+    void failedWriteThrowsFromRecord() throws IOException {
+        assumeTrue(Files.isWritable(FULL));
+        Simulation simulation = ScenarioGenerator.UNIFORM.create(2000, 3, 1400, 800);
+        TrajectoryRecorder recorder = failingRecorder(simulation);
+        assertThrows(UncheckedIOException.class, () -> simulation.update(1));
+        simulation.setRecorder(null);
+        assertThrows(IOException.class, recorder::close);
+    }
+
+    @Test
+    void quietRecorderKeepsTheSimulationStepping() throws IOException {
+        assumeTrue(Files.isWritable(FULL));
+        Simulation simulation = ScenarioGenerator.UNIFORM.create(2000, 3, 1400, 800);
+        TrajectoryRecorder recorder = failingRecorder(simulation);
+        recorder.setQuiet(true);
+        for (int k = 0; k < 10; k++) {
+            simulation.update(1);
+        }
+        simulation.setRecorder(null);
+        assertThrows(IOException.class, recorder::close);
+    }
+
+    private static TrajectoryRecorder failingRecorder(Simulation simulation) throws IOException {
+        // records with a chunk per frame until the writer has failed
+        simulation.setGravitySolver(new BarnesHutGravity());
+        TrajectoryRecorder recorder = new TrajectoryRecorder(FULL, 1, 1e-3, 1, 8);
+        simulation.setRecorder(recorder);
+        recorder.setQuiet(true);
+        for (int k = 0; k < MAX_STEPS && !recorder.hasFailed(); k++) {
+            simulation.update(1);
+        }
+        assertTrue(recorder.hasFailed(), "writing to " + FULL + " did not fail");
+        recorder.setQuiet(false);
+        return recorder;
+    }
+}